@@ -46,6 +46,8 @@ public class Config {
 
 	public static class Common {
 		public final EnabledItems enabledItems;
+		public final ForgeConfigSpec.BooleanValue bitSetSlotTracker;
+		public final ForgeConfigSpec.IntValue controllerMetricsSampleRate;
 
 		@SuppressWarnings("unused") //need the Event parameter for forge reflection to understand what event this listens to
 		public void onConfigReload(ModConfigEvent.Reloading event) {
@@ -56,6 +58,16 @@ public class Config {
 			builder.comment("Common Settings").push("common");
 
 			enabledItems = new EnabledItems(builder);
+			bitSetSlotTracker = builder.comment("Whether storage slots should be indexed using primitive bitsets instead of boxed slot collections. Uses less memory in storages with many slots").define("bitSetSlotTracker", false);
+			controllerMetricsSampleRate = builder.comment("Every how many controller operations access metrics get recorded, 0 disables them. Recorded metrics can be displayed with /sophisticatedcore controllerMetrics command").defineInRange("controllerMetricsSampleRate", 0, 0, 1000);
+		}
+
+		public boolean useBitSetSlotTracker() {
+			return COMMON_SPEC.isLoaded() && bitSetSlotTracker.get();
+		}
+
+		public int getControllerMetricsSampleRate() {
+			return COMMON_SPEC.isLoaded() ? controllerMetricsSampleRate.get() : 0;
 		}
 
 		public static class EnabledItems {
@@ -6,9 +6,12 @@ import net.minecraft.world.item.crafting.RecipeSerializer;
 import net.minecraft.world.level.Level;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.common.capabilities.RegisterCapabilitiesEvent;
 import net.minecraftforge.common.crafting.CraftingHelper;
 import net.minecraftforge.event.AddReloadListenerEvent;
+import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.event.RegistryEvent;
+import net.minecraftforge.event.TagsUpdatedEvent;
 import net.minecraftforge.event.server.ServerStartedEvent;
 import net.minecraftforge.eventbus.api.IEventBus;
 import net.minecraftforge.fml.ModLoadingContext;
@@ -17,14 +20,19 @@ import net.minecraftforge.fml.config.ModConfig;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 import net.minecraftforge.fml.loading.FMLEnvironment;
+import net.p3pp3rf1y.sophisticatedcore.api.IItemExtractor;
 import net.p3pp3rf1y.sophisticatedcore.client.ClientEventHandler;
 import net.p3pp3rf1y.sophisticatedcore.common.CommonEventHandler;
+import net.p3pp3rf1y.sophisticatedcore.controller.ControllerMetricsCommand;
 import net.p3pp3rf1y.sophisticatedcore.crafting.ItemEnabledCondition;
 import net.p3pp3rf1y.sophisticatedcore.crafting.UpgradeClearRecipe;
 import net.p3pp3rf1y.sophisticatedcore.crafting.UpgradeNextTierRecipe;
 import net.p3pp3rf1y.sophisticatedcore.data.DataGenerators;
 import net.p3pp3rf1y.sophisticatedcore.init.ModCompat;
 import net.p3pp3rf1y.sophisticatedcore.network.PacketHandler;
+import net.p3pp3rf1y.sophisticatedcore.upgrades.FilterMatcher;
+import net.p3pp3rf1y.sophisticatedcore.upgrades.UpgradeTickScheduler;
+import net.p3pp3rf1y.sophisticatedcore.util.InventorySorter;
 import net.p3pp3rf1y.sophisticatedcore.util.RecipeHelper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -48,11 +56,15 @@ public class SophisticatedCore {
 		IEventBus modBus = FMLJavaModLoadingContext.get().getModEventBus();
 		modBus.addListener(SophisticatedCore::setup);
 		modBus.addListener(DataGenerators::gatherData);
+		modBus.addListener(SophisticatedCore::registerCapabilities);
 		modBus.addGenericListener(RecipeSerializer.class, this::registerRecipeSerializers);
 
 		IEventBus eventBus = MinecraftForge.EVENT_BUS;
 		eventBus.addListener(SophisticatedCore::onResourceReload);
 		eventBus.addListener(SophisticatedCore::serverStarted);
+		eventBus.addListener(SophisticatedCore::onTagsUpdated);
+		eventBus.addListener(SophisticatedCore::registerCommands);
+		UpgradeTickScheduler.init();
 	}
 
 	private static void serverStarted(ServerStartedEvent event) {
@@ -72,6 +84,19 @@ public class SophisticatedCore {
 		UpgradeNextTierRecipe.REGISTERED_RECIPES.clear();
 	}
 
+	private static void registerCommands(RegisterCommandsEvent event) {
+		ControllerMetricsCommand.register(event.getDispatcher());
+	}
+
+	private static void onTagsUpdated(TagsUpdatedEvent event) {
+		InventorySorter.clearSortKeyCache();
+		FilterMatcher.onTagsUpdated();
+	}
+
+	private static void registerCapabilities(RegisterCapabilitiesEvent event) {
+		event.register(IItemExtractor.class);
+	}
+
 	private static void setup(FMLCommonSetupEvent event) {
 		PACKET_HANDLER.init();
 		ModCompat.initCompats();
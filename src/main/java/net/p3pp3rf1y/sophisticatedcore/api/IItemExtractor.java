@@ -0,0 +1,31 @@
+package net.p3pp3rf1y.sophisticatedcore.api;
+
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.common.capabilities.Capability;
+import net.minecraftforge.common.capabilities.CapabilityManager;
+import net.minecraftforge.common.capabilities.CapabilityToken;
+
+import java.util.function.Predicate;
+
+/**
+ * Extraction by what is being extracted instead of by slot, meant for automation that would otherwise need to go through all slots of
+ * the {@link net.minecraftforge.items.IItemHandler} looking for a match.
+ */
+public interface IItemExtractor {
+	Capability<IItemExtractor> CAPABILITY = CapabilityManager.get(new CapabilityToken<>() {});
+
+	/**
+	 * Extracts up to amount of items that stack with the passed in stack.
+	 *
+	 * @return extracted stack, empty if nothing could be extracted
+	 */
+	ItemStack extractItem(ItemStack stack, int amount, boolean simulate);
+
+	/**
+	 * Extracts up to amount of items of the first kind of stack that matches the predicate. Only stacks that stack together are extracted
+	 * so that the result is always a single stack.
+	 *
+	 * @return extracted stack, empty if nothing could be extracted
+	 */
+	ItemStack extractItem(Predicate<ItemStack> matches, int amount, boolean simulate);
+}
@@ -1,9 +1,15 @@
 package net.p3pp3rf1y.sophisticatedcore.controller;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.IntTag;
+import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.LongTag;
 import net.minecraft.nbt.Tag;
 import net.minecraft.network.protocol.game.ClientboundBlockEntityDataPacket;
@@ -17,37 +23,60 @@ import net.minecraftforge.common.util.LazyOptional;
 import net.minecraftforge.items.CapabilityItemHandler;
 import net.minecraftforge.items.IItemHandler;
 import net.minecraftforge.items.IItemHandlerModifiable;
+import net.minecraftforge.items.ItemHandlerHelper;
 import net.minecraftforge.items.wrapper.EmptyHandler;
 import net.p3pp3rf1y.sophisticatedcore.SophisticatedCore;
-import net.p3pp3rf1y.sophisticatedcore.api.IStorageWrapper;
+import net.p3pp3rf1y.sophisticatedcore.api.IItemExtractor;
 import net.p3pp3rf1y.sophisticatedcore.inventory.IItemHandlerSimpleInserter;
 import net.p3pp3rf1y.sophisticatedcore.inventory.ITrackedContentsItemHandler;
 import net.p3pp3rf1y.sophisticatedcore.inventory.ItemStackKey;
 import net.p3pp3rf1y.sophisticatedcore.settings.memory.MemorySettingsCategory;
+import net.p3pp3rf1y.sophisticatedcore.util.InventoryHelper;
 import net.p3pp3rf1y.sophisticatedcore.util.NBTHelper;
 import net.p3pp3rf1y.sophisticatedcore.util.WorldHelper;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
-public abstract class ControllerBlockEntityBase extends BlockEntity implements IItemHandlerModifiable {
+public abstract class ControllerBlockEntityBase extends BlockEntity implements IItemHandlerModifiable, IItemExtractor {
 	public static final int SEARCH_RANGE = 15;
 	private List<BlockPos> storagePositions = new ArrayList<>();
-	private List<Integer> baseIndexes = new ArrayList<>();
+	private final Set<BlockPos> storagePositionsSet = new HashSet<>();
+	private final StorageConnections storageConnections;
+	private final StorageConnections.IStorageLookup storageLookup = new StorageConnections.IStorageLookup() {
+		@Override
+		public boolean isStorage(BlockPos pos) {
+			return WorldHelper.getLoadedBlockEntity(level, pos, IControllableStorage.class).isPresent();
+		}
+
+		@Override
+		public boolean canConnectStorages(BlockPos pos) {
+			return ControllerBlockEntityBase.this.canConnectStorages(pos);
+		}
+	};
+	private boolean storageConnectionsKnown = true;
+	private IntArrayList baseIndexes = new IntArrayList();
 	private int totalSlots = 0;
 	private final Map<ItemStackKey, Set<BlockPos>> stackStorages = new HashMap<>();
 	private final Map<BlockPos, Set<ItemStackKey>> storageStacks = new HashMap<>();
 	private final Set<BlockPos> emptySlotsStorages = new LinkedHashSet<>();
+	private final Map<BlockPos, ResolvedStorage> resolvedStorages = new HashMap<>();
 
 	private final Map<Item, Set<BlockPos>> memorizedItemStorages = new HashMap<>();
 	private final Map<BlockPos, Set<Item>> storageMemorizedItems = new HashMap<>();
@@ -55,24 +84,46 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 	private final Map<BlockPos, Set<Integer>> storageMemorizedStacks = new HashMap<>();
 
 	private Set<BlockPos> linkedBlocks = new LinkedHashSet<>();
+	private InsertionRoutingPolicy insertionRoutingPolicy = InsertionRoutingPolicy.FIRST_FIT;
+	//share of empty slots of storages ordered from the emptiest, only kept for least loaded routing. Built once when first needed and then
+	//entries get updated when storages report changes to their empty slots or receive items
+	private final Object2DoubleMap<BlockPos> storageEmptySlotRatios = new Object2DoubleOpenHashMap<>();
+	private final TreeSet<BlockPos> leastLoadedStorages = new TreeSet<>((a, b) -> {
+		int ratioCompare = Double.compare(storageEmptySlotRatios.getDouble(b), storageEmptySlotRatios.getDouble(a));
+		return ratioCompare != 0 ? ratioCompare : a.compareTo(b);
+	});
+	private boolean storageLoadsInitialized = false;
+
+	//stacks of storages saved with the controller, used instead of going through storage slots if the storage contents haven't changed since
+	private final Map<BlockPos, StorageIndexSnapshot> storageIndexSnapshots = new HashMap<>();
+	//contents versions of storages whose stacks were restored from snapshot, the index is only known to be current for these while the version matches
+	private final Map<BlockPos, Long> restoredStorageContentsVersions = new HashMap<>();
+
+	private final ControllerMetrics metrics = new ControllerMetrics();
+	private boolean recordingInsert = false;
+	private int storagesProbed = 0;
 
 	@Nullable
 	private LazyOptional<IItemHandler> itemHandlerCap;
+	@Nullable
+	private LazyOptional<IItemExtractor> itemExtractorCap;
 
 	public boolean addLinkedBlock(BlockPos linkedPos) {
-		if (level != null && !level.isClientSide() && isWithinRange(linkedPos) && !linkedBlocks.contains(linkedPos) && !storagePositions.contains(linkedPos)) {
+		if (level != null && !level.isClientSide() && isWithinRange(linkedPos) && !linkedBlocks.contains(linkedPos) && !storagePositionsSet.contains(linkedPos)) {
 
 			linkedBlocks.add(linkedPos);
 			setChanged();
 
 			WorldHelper.getBlockEntity(level, linkedPos, ILinkable.class).ifPresent(l -> {
 				if (l.connectLinkedSelf()) {
-					Set<BlockPos> positionsToCheck = new LinkedHashSet<>();
-					positionsToCheck.add(linkedPos);
+					Map<BlockPos, BlockPos> positionsToCheck = new LinkedHashMap<>();
+					positionsToCheck.put(linkedPos, getBlockPos());
 					searchAndAddStorages(positionsToCheck, true);
 				}
 
-				searchAndAddStorages(new LinkedHashSet<>(l.getConnectablePositions()), false);
+				Map<BlockPos, BlockPos> positionsToCheck = new LinkedHashMap<>();
+				l.getConnectablePositions().forEach(p -> positionsToCheck.put(p, getBlockPos()));
+				searchAndAddStorages(positionsToCheck, false);
 			});
 			WorldHelper.notifyBlockUpdate(this);
 			return true;
@@ -83,7 +134,9 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 	public void removeLinkedBlock(BlockPos storageBlockPos) {
 		linkedBlocks.remove(storageBlockPos);
 		setChanged();
+		long verificationStart = System.nanoTime();
 		verifyStoragesConnected();
+		recordConnectivityVerification(verificationStart);
 
 		WorldHelper.notifyBlockUpdate(this);
 	}
@@ -95,19 +148,21 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 			stackStorages.clear();
 			storageStacks.clear();
 			emptySlotsStorages.clear();
+			resolvedStorages.clear();
 			storagePositions.forEach(this::addStorageStacksAndRegisterListeners);
 		}
 	}
 
 	public void searchAndAddStorages() {
-		Set<BlockPos> positionsToCheck = new HashSet<>();
+		Map<BlockPos, BlockPos> positionsToCheck = new LinkedHashMap<>();
 		for (Direction dir : Direction.values()) {
-			positionsToCheck.add(getBlockPos().offset(dir.getNormal()));
+			positionsToCheck.put(getBlockPos().offset(dir.getNormal()), getBlockPos());
 		}
 		searchAndAddStorages(positionsToCheck, false);
 	}
 
 	public void changeSlots(BlockPos storagePos, int newSlots, boolean hasEmptySlots) {
+		invalidateStorageHandler(storagePos);
 		updateBaseIndexesAndTotalSlots(storagePos, newSlots);
 		updateEmptySlots(storagePos, hasEmptySlots);
 	}
@@ -118,16 +173,20 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 		} else if (!emptySlotsStorages.contains(storagePos) && hasEmptySlots) {
 			emptySlotsStorages.add(storagePos);
 		}
+		updateStorageLoad(storagePos);
 	}
 
 	private void updateBaseIndexesAndTotalSlots(BlockPos storagePos, int newSlots) {
 		int index = storagePositions.indexOf(storagePos);
+		if (index < 0) {
+			return;
+		}
 		int originalSlots = getStorageSlots(index);
 
 		int diff = newSlots - originalSlots;
 
 		for (int i = index; i < baseIndexes.size(); i++) {
-			baseIndexes.set(i, baseIndexes.get(i) + diff);
+			baseIndexes.set(i, baseIndexes.getInt(i) + diff);
 		}
 
 		totalSlots += diff;
@@ -135,8 +194,8 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 	}
 
 	private int getStorageSlots(int index) {
-		int previousBaseIndex = index == 0 ? 0 : baseIndexes.get(index - 1);
-		return baseIndexes.get(index) - previousBaseIndex;
+		int previousBaseIndex = index == 0 ? 0 : baseIndexes.getInt(index - 1);
+		return baseIndexes.getInt(index) - previousBaseIndex;
 	}
 
 	public int getSlots(int storageIndex) {
@@ -146,31 +205,34 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 		return getStorageSlots(storageIndex);
 	}
 
-	private void searchAndAddStorages(Set<BlockPos> positionsToCheck, boolean addingLinkedSelf) {
+	private void searchAndAddStorages(Map<BlockPos, BlockPos> positionsToCheck, boolean addingLinkedSelf) {
 		Set<BlockPos> positionsChecked = new HashSet<>();
 
 		boolean first = true;
 		while (!positionsToCheck.isEmpty()) {
-			Iterator<BlockPos> it = positionsToCheck.iterator();
-			BlockPos posToCheck = it.next();
+			Iterator<Map.Entry<BlockPos, BlockPos>> it = positionsToCheck.entrySet().iterator();
+			Map.Entry<BlockPos, BlockPos> entry = it.next();
+			BlockPos posToCheck = entry.getKey();
+			BlockPos connectedThrough = entry.getValue();
 			it.remove();
 
 			final boolean finalFirst = first;
 			WorldHelper.getLoadedBlockEntity(level, posToCheck, IControllableStorage.class).ifPresentOrElse(storage ->
-							tryToConnectStorageAndAddPositionsToCheckAround(positionsToCheck, addingLinkedSelf, positionsChecked, posToCheck, finalFirst, storage),
+							tryToConnectStorageAndAddPositionsToCheckAround(positionsToCheck, addingLinkedSelf, positionsChecked, posToCheck, connectedThrough, finalFirst, storage),
 					() -> positionsChecked.add(posToCheck)
 			);
 			first = false;
 		}
 	}
 
-	private void tryToConnectStorageAndAddPositionsToCheckAround(Set<BlockPos> positionsToCheck, boolean addingLinkedSelf, Set<BlockPos> positionsChecked, BlockPos posToCheck, boolean finalFirst, IControllableStorage storage) {
+	private void tryToConnectStorageAndAddPositionsToCheckAround(Map<BlockPos, BlockPos> positionsToCheck, boolean addingLinkedSelf, Set<BlockPos> positionsChecked, BlockPos posToCheck,
+			@Nullable BlockPos connectedThrough, boolean finalFirst, IControllableStorage storage) {
 		if (storage.canBeConnected() || (addingLinkedSelf && finalFirst)) {
 			if (storage instanceof ILinkable linkable && linkable.isLinked() && (!addingLinkedSelf || !finalFirst)) {
 				linkedBlocks.remove(posToCheck);
 				linkable.setNotLinked();
 			} else {
-				addStorageData(posToCheck);
+				addStorageData(posToCheck, connectedThrough);
 			}
 			if (storage.canConnectStorages()) {
 				addUncheckedPositionsAround(positionsToCheck, positionsChecked, posToCheck);
@@ -178,11 +240,11 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 		}
 	}
 
-	private void addUncheckedPositionsAround(Set<BlockPos> positionsToCheck, Set<BlockPos> positionsChecked, BlockPos currentPos) {
+	private void addUncheckedPositionsAround(Map<BlockPos, BlockPos> positionsToCheck, Set<BlockPos> positionsChecked, BlockPos currentPos) {
 		for (Direction dir : Direction.values()) {
 			BlockPos pos = currentPos.offset(dir.getNormal());
-			if (!positionsChecked.contains(pos) && (!storagePositions.contains(pos) || linkedBlocks.contains(pos)) && isWithinRange(pos)) {
-				positionsToCheck.add(pos);
+			if (!positionsChecked.contains(pos) && (!storagePositionsSet.contains(pos) || linkedBlocks.contains(pos)) && isWithinRange(pos)) {
+				positionsToCheck.putIfAbsent(pos, currentPos);
 			}
 		}
 	}
@@ -192,19 +254,27 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 	}
 
 	public void addStorage(BlockPos storagePos) {
-		if (storagePositions.contains(storagePos)) {
+		if (storagePositionsSet.contains(storagePos)) {
 			removeStorageInventoryData(storagePos);
+			//storages connected through this one still point to it so connections need to be rebuilt from scratch on the next removal
+			storageConnectionsKnown = false;
 		}
 
 		if (isWithinRange(storagePos)) {
-			HashSet<BlockPos> positionsToCheck = new LinkedHashSet<>();
-			positionsToCheck.add(storagePos);
+			Map<BlockPos, BlockPos> positionsToCheck = new LinkedHashMap<>();
+			positionsToCheck.put(storagePos, storageConnections.findConnectedNeighbor(storagePos, getRootStoragePositions(), storageLookup));
 			searchAndAddStorages(positionsToCheck, false);
 		}
 	}
 
-	private void addStorageData(BlockPos storagePos) {
+	private void addStorageData(BlockPos storagePos, @Nullable BlockPos connectedThrough) {
 		storagePositions.add(storagePos);
+		storagePositionsSet.add(storagePos);
+		if (connectedThrough != null) {
+			storageConnections.connect(storagePos, connectedThrough);
+		} else {
+			storageConnectionsKnown = false;
+		}
 		totalSlots += getInventoryHandlerValueFromHolder(storagePos, IItemHandler::getSlots).orElse(0);
 		baseIndexes.add(totalSlots);
 		addStorageStacksAndRegisterListeners(storagePos);
@@ -214,16 +284,35 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 	}
 
 	public void addStorageStacksAndRegisterListeners(BlockPos storagePos) {
+		invalidateStorageHandler(storagePos);
 		WorldHelper.getLoadedBlockEntity(level, storagePos, IControllableStorage.class).ifPresent(storage -> {
 			ITrackedContentsItemHandler handler = storage.getStorageWrapper().getInventoryForInputOutput();
-			handler.getTrackedStacks().forEach(k -> addStorageStack(storagePos, k));
-			if (handler.hasEmptySlots()) {
-				emptySlotsStorages.add(storagePos);
+			StorageIndexSnapshot snapshot = storageIndexSnapshots.remove(storagePos);
+			long contentsVersion = handler.getContentsVersion();
+			Optional<UUID> contentsUuid = storage.getStorageWrapper().getContentsUuid();
+			boolean restoreFromSnapshot = snapshot != null && contentsVersion >= 0 && snapshot.contentsVersion() == contentsVersion
+					&& contentsUuid.isPresent() && contentsUuid.get().equals(snapshot.contentsUuid());
+			if (restoreFromSnapshot) {
+				snapshot.stacks().forEach(k -> addStorageStack(storagePos, k));
+				if (snapshot.hasEmptySlots()) {
+					emptySlotsStorages.add(storagePos);
+				}
+				restoredStorageContentsVersions.put(storagePos, contentsVersion);
+			} else {
+				handler.getTrackedStacks().forEach(k -> addStorageStack(storagePos, k));
+				if (handler.hasEmptySlots()) {
+					emptySlotsStorages.add(storagePos);
+				}
+				restoredStorageContentsVersions.remove(storagePos);
 			}
 			MemorySettingsCategory memorySettings = storage.getStorageWrapper().getSettingsHandler().getTypeCategory(MemorySettingsCategory.class);
 			memorySettings.getFilterItemSlots().keySet().forEach(i -> addStorageMemorizedItem(storagePos, i));
 			memorySettings.getFilterStackSlots().keySet().forEach(stackHash -> addStorageMemorizedStack(storagePos, stackHash));
-			storage.registerController(this);
+			if (restoreFromSnapshot) {
+				storage.registerController(this, snapshot.stacks(), snapshot.hasEmptySlots());
+			} else {
+				storage.registerController(this);
+			}
 		});
 	}
 
@@ -240,31 +329,53 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 	public void removeStorageMemorizedItem(BlockPos storagePos, Item item) {
 		memorizedItemStorages.computeIfPresent(item, (i, positions) -> {
 			positions.remove(storagePos);
-			return positions;
+			return positions.isEmpty() ? null : positions;
+		});
+		storageMemorizedItems.computeIfPresent(storagePos, (pos, items) -> {
+			items.remove(item);
+			return items.isEmpty() ? null : items;
 		});
-		if (memorizedItemStorages.containsKey(item) && memorizedItemStorages.get(item).isEmpty()) {
-			memorizedItemStorages.remove(item);
-		}
-		storageMemorizedItems.remove(storagePos);
 	}
 
 	public void removeStorageMemorizedStack(BlockPos storagePos, int stackHash) {
 		memorizedStackStorages.computeIfPresent(stackHash, (i, positions) -> {
 			positions.remove(storagePos);
-			return positions;
+			return positions.isEmpty() ? null : positions;
+		});
+		storageMemorizedStacks.computeIfPresent(storagePos, (pos, stackHashes) -> {
+			stackHashes.remove(stackHash);
+			return stackHashes.isEmpty() ? null : stackHashes;
 		});
-		if (memorizedStackStorages.containsKey(stackHash) && memorizedStackStorages.get(stackHash).isEmpty()) {
-			memorizedStackStorages.remove(stackHash);
-		}
-		storageMemorizedStacks.remove(storagePos);
 	}
 
 	private <T> Optional<T> getInventoryHandlerValueFromHolder(BlockPos storagePos, Function<IItemHandlerSimpleInserter, T> valueGetter) {
-		return getWrapperValueFromHolder(storagePos, wrapper -> valueGetter.apply(wrapper.getInventoryForInputOutput()));
+		return getStorageHandler(storagePos).map(valueGetter);
 	}
 
-	private <T> Optional<T> getWrapperValueFromHolder(BlockPos storagePos, Function<IStorageWrapper, T> valueGetter) {
-		return WorldHelper.getLoadedBlockEntity(level, storagePos, IControllableStorage.class).map(holder -> valueGetter.apply(holder.getStorageWrapper()));
+	private Optional<ITrackedContentsItemHandler> getStorageHandler(BlockPos storagePos) {
+		//only the storage is cached, the input / output handler is requested from it every time as the storage may replace it whenever it gets refreshed
+		return getStorage(storagePos).map(storage -> storage.getStorageWrapper().getInventoryForInputOutput());
+	}
+
+	private Optional<IControllableStorage> getStorage(BlockPos storagePos) {
+		ResolvedStorage resolved = resolvedStorages.get(storagePos);
+		if (resolved != null) {
+			if (!resolved.blockEntity().isRemoved()) {
+				return Optional.of(resolved.storage());
+			}
+			resolvedStorages.remove(storagePos);
+		}
+
+		return WorldHelper.getLoadedBlockEntity(level, storagePos, IControllableStorage.class).map(storage -> {
+			if (storage instanceof BlockEntity blockEntity) {
+				resolvedStorages.put(storagePos, new ResolvedStorage(blockEntity, storage));
+			}
+			return storage;
+		});
+	}
+
+	public void invalidateStorageHandler(BlockPos storagePos) {
+		resolvedStorages.remove(storagePos);
 	}
 
 	public void addStorageStack(BlockPos storagePos, ItemStackKey itemStackKey) {
@@ -275,12 +386,12 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 	public void removeStorageStack(BlockPos storagePos, ItemStackKey stackKey) {
 		stackStorages.computeIfPresent(stackKey, (sk, positions) -> {
 			positions.remove(storagePos);
-			return positions;
+			return positions.isEmpty() ? null : positions;
+		});
+		storageStacks.computeIfPresent(storagePos, (pos, stackKeys) -> {
+			stackKeys.remove(stackKey);
+			return stackKeys.isEmpty() ? null : stackKeys;
 		});
-		if (stackStorages.containsKey(stackKey) && stackStorages.get(stackKey).isEmpty()) {
-			stackStorages.remove(stackKey);
-		}
-		storageStacks.remove(storagePos);
 	}
 
 	public void removeStorageStacks(BlockPos storagePos) {
@@ -299,8 +410,77 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 		storageStacks.remove(storagePos);
 	}
 
+	/**
+	 * @return total count of the stack in all connected storages, only storages known to hold the stack are queried
+	 */
+	public int getStackCount(ItemStackKey stackKey) {
+		Set<BlockPos> positions = stackStorages.get(stackKey);
+		if (positions == null) {
+			return 0;
+		}
+		int count = 0;
+		for (BlockPos storagePos : positions) {
+			count += getStorageHandler(storagePos).map(handler -> handler.getStackCount(stackKey)).orElse(0);
+		}
+		return count;
+	}
+
+	/**
+	 * Extracts up to amount of the stack from the storages that hold it, going through them in the order they are indexed in.
+	 */
+	public ItemStack extractItem(ItemStackKey stackKey, int amount, boolean simulate) {
+		Set<BlockPos> positions = stackStorages.get(stackKey);
+		if (positions == null || amount <= 0) {
+			return ItemStack.EMPTY;
+		}
+
+		ItemStack ret = ItemStack.EMPTY;
+		boolean sampled = !simulate && metrics.shouldSample();
+		//copy as extraction that empties storage of the stack removes the storage from the set through listener
+		for (BlockPos storagePos : new ArrayList<>(positions)) {
+			int toExtract = amount - ret.getCount();
+			ItemStack extracted = getStorageHandler(storagePos).map(handler -> handler.extractItem(stackKey, toExtract, simulate)).orElse(ItemStack.EMPTY);
+			if (!extracted.isEmpty()) {
+				if (sampled) {
+					metrics.recordStorageExtract(storagePos);
+				}
+				if (ret.isEmpty()) {
+					ret = extracted;
+				} else {
+					ret.grow(extracted.getCount());
+				}
+			}
+			if (ret.getCount() >= amount) {
+				break;
+			}
+		}
+		return ret;
+	}
+
+	@Override
+	public ItemStack extractItem(ItemStack stack, int amount, boolean simulate) {
+		if (stack.isEmpty()) {
+			return ItemStack.EMPTY;
+		}
+		return extractItem(ItemStackKey.probe(stack), amount, simulate);
+	}
+
+	@Override
+	public ItemStack extractItem(Predicate<ItemStack> matches, int amount, boolean simulate) {
+		//safe to keep iterating after extraction that returns empty stack as only actual extraction can remove keys through listeners
+		for (ItemStackKey stackKey : stackStorages.keySet()) {
+			if (matches.test(stackKey.stack())) {
+				ItemStack extracted = extractItem(stackKey, amount, simulate);
+				if (!extracted.isEmpty()) {
+					return extracted;
+				}
+			}
+		}
+		return ItemStack.EMPTY;
+	}
+
 	protected boolean hasStack(ItemStack stack) {
-		return stackStorages.containsKey(new ItemStackKey(stack));
+		return stackStorages.containsKey(ItemStackKey.probe(stack));
 	}
 
 	protected boolean isMemorizedItem(ItemStack stack) {
@@ -308,12 +488,51 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 	}
 
 	public void removeStorage(BlockPos storagePos) {
-		removeStorageInventoryDataAndUnregisterController(storagePos);
-		verifyStoragesConnected();
+		long verificationStart = System.nanoTime();
+		if (!storageConnectionsKnown) {
+			removeStorageInventoryDataAndUnregisterController(storagePos);
+			verifyStoragesConnected();
+		} else {
+			Set<BlockPos> disconnectedStorages = storageConnections.detachConnectedThrough(storagePos);
+			removeStorageInventoryDataAndUnregisterController(storagePos);
+			if (!disconnectedStorages.isEmpty()) {
+				storageConnections.reconnect(disconnectedStorages, getRootStoragePositions(), storageLookup);
+				disconnectedStorages.forEach(this::removeStorageInventoryDataAndUnregisterController);
+			}
+		}
+		recordConnectivityVerification(verificationStart);
+	}
+
+	private void recordConnectivityVerification(long verificationStart) {
+		if (metrics.isEnabled()) {
+			metrics.recordConnectivityVerification(System.nanoTime() - verificationStart);
+		}
+	}
+
+	public ControllerMetrics getMetrics() {
+		return metrics;
+	}
+
+	private boolean canConnectStorages(BlockPos storagePos) {
+		return WorldHelper.getLoadedBlockEntity(level, storagePos, IControllableStorage.class).map(IControllableStorage::canConnectStorages).orElse(false);
+	}
+
+	private Set<BlockPos> getRootStoragePositions() {
+		Set<BlockPos> rootStoragePositions = new HashSet<>();
+		for (Direction dir : Direction.values()) {
+			rootStoragePositions.add(getBlockPos().offset(dir.getNormal()));
+		}
+		linkedBlocks.forEach(linkedPosition -> WorldHelper.getBlockEntity(getLevel(), linkedPosition, ILinkable.class).ifPresent(l -> {
+			if (l.connectLinkedSelf()) {
+				rootStoragePositions.add(linkedPosition);
+			}
+			rootStoragePositions.addAll(l.getConnectablePositions());
+		}));
+		return rootStoragePositions;
 	}
 
 	private void removeStorageInventoryDataAndUnregisterController(BlockPos storagePos) {
-		if (!storagePositions.contains(storagePos)) {
+		if (!storagePositionsSet.contains(storagePos)) {
 			return;
 		}
 		removeStorageInventoryData(storagePos);
@@ -332,6 +551,13 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 		removeStorageMemorizedItems(storagePos);
 		removeStorageMemorizedStacks(storagePos);
 		removeStorageWithEmptySlots(storagePos);
+		invalidateStorageHandler(storagePos);
+		removeStorageLoad(storagePos);
+		storageIndexSnapshots.remove(storagePos);
+		restoredStorageContentsVersions.remove(storagePos);
+		metrics.removeStorage(storagePos);
+		storageConnections.disconnect(storagePos);
+		storagePositionsSet.remove(storagePos);
 		storagePositions.remove(idx);
 		removeBaseIndexAt(idx);
 	}
@@ -369,54 +595,17 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 	}
 
 	private void verifyStoragesConnected() {
-		HashSet<BlockPos> toVerify = new HashSet<>(storagePositions);
+		storageConnections.clear();
 
-		Set<BlockPos> positionsToCheck = new HashSet<>();
-		for (Direction dir : Direction.values()) {
-			BlockPos offsetPos = getBlockPos().offset(dir.getNormal());
-			if (toVerify.contains(offsetPos)) {
-				positionsToCheck.add(offsetPos);
-			}
-		}
-		Set<BlockPos> positionsChecked = new HashSet<>();
-
-		verifyDirectlyConnected(toVerify, positionsToCheck, positionsChecked);
+		Map<BlockPos, BlockPos> connections = storageConnections.findConnected(storagePositions, getRootStoragePositions(), storageLookup);
+		connections.forEach(storageConnections::connect);
 
-		linkedBlocks.forEach(linkedPosition -> WorldHelper.getBlockEntity(getLevel(), linkedPosition, ILinkable.class).ifPresent(l -> {
-			if (l.connectLinkedSelf() && toVerify.contains(linkedPosition)) {
-				positionsToCheck.add(linkedPosition);
+		new ArrayList<>(storagePositions).forEach(storagePos -> {
+			if (!connections.containsKey(storagePos)) {
+				removeStorageInventoryDataAndUnregisterController(storagePos);
 			}
-			l.getConnectablePositions().forEach(p -> {
-				if (toVerify.contains(p)) {
-					positionsToCheck.add(p);
-				}
-			});
-		}));
-
-		verifyDirectlyConnected(toVerify, positionsToCheck, positionsChecked);
-
-		toVerify.forEach(this::removeStorageInventoryDataAndUnregisterController);
-	}
-
-	private void verifyDirectlyConnected(HashSet<BlockPos> toVerify, Set<BlockPos> positionsToCheck, Set<BlockPos> positionsChecked) {
-		while (!positionsToCheck.isEmpty()) {
-			Iterator<BlockPos> it = positionsToCheck.iterator();
-			BlockPos posToCheck = it.next();
-			it.remove();
-
-			positionsChecked.add(posToCheck);
-			WorldHelper.getLoadedBlockEntity(level, posToCheck, IControllableStorage.class).ifPresent(h -> {
-				toVerify.remove(posToCheck);
-				if (h.canConnectStorages()) {
-					for (Direction dir : Direction.values()) {
-						BlockPos pos = posToCheck.offset(dir.getNormal());
-						if (!positionsChecked.contains(pos) && toVerify.contains(pos)) {
-							positionsToCheck.add(pos);
-						}
-					}
-				}
-			});
-		}
+		});
+		storageConnectionsKnown = true;
 	}
 
 	private void removeBaseIndexAt(int idx) {
@@ -424,14 +613,15 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 			return;
 		}
 		int slotsRemoved = getStorageSlots(idx);
-		baseIndexes.remove(idx);
+		baseIndexes.removeInt(idx);
 		for (int i = idx; i < baseIndexes.size(); i++) {
-			baseIndexes.set(i, baseIndexes.get(i) - slotsRemoved);
+			baseIndexes.set(i, baseIndexes.getInt(i) - slotsRemoved);
 		}
 	}
 
 	protected ControllerBlockEntityBase(BlockEntityType<?> blockEntityType, BlockPos pos, BlockState state) {
 		super(blockEntityType, pos, state);
+		storageConnections = new StorageConnections(getBlockPos());
 	}
 
 	@Nonnull
@@ -442,6 +632,11 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 				itemHandlerCap = LazyOptional.of(() -> this);
 			}
 			return itemHandlerCap.cast();
+		} else if (cap == IItemExtractor.CAPABILITY) {
+			if (itemExtractorCap == null) {
+				itemExtractorCap = LazyOptional.of(() -> this);
+			}
+			return itemExtractorCap.cast();
 		}
 		return super.getCapability(cap, side);
 	}
@@ -453,6 +648,10 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 			itemHandlerCap.invalidate();
 			itemHandlerCap = null;
 		}
+		if (itemExtractorCap != null) {
+			itemExtractorCap.invalidate();
+			itemExtractorCap = null;
+		}
 	}
 
 	@Override
@@ -465,26 +664,34 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 			return -1;
 		}
 
-		for (int i = 0; i < baseIndexes.size(); i++) {
-			if (slot - baseIndexes.get(i) < 0) {
-				return i;
+		//base indexes are ascending exclusive end slots of storages so the storage index is the first one whose base index is greater than the slot
+		int low = 0;
+		int high = baseIndexes.size() - 1;
+		int index = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (baseIndexes.getInt(mid) > slot) {
+				index = mid;
+				high = mid - 1;
+			} else {
+				low = mid + 1;
 			}
 		}
-		return -1;
+		return index;
 	}
 
 	protected IItemHandlerModifiable getHandlerFromIndex(int index) {
 		if (index < 0 || index >= storagePositions.size()) {
 			return (IItemHandlerModifiable) EmptyHandler.INSTANCE;
 		}
-		return getWrapperValueFromHolder(storagePositions.get(index), wrapper -> (IItemHandlerModifiable) wrapper.getInventoryForInputOutput()).orElse((IItemHandlerModifiable) EmptyHandler.INSTANCE);
+		return getStorageHandler(storagePositions.get(index)).map(IItemHandlerModifiable.class::cast).orElse((IItemHandlerModifiable) EmptyHandler.INSTANCE);
 	}
 
 	protected int getSlotFromIndex(int slot, int index) {
 		if (index <= 0 || index >= baseIndexes.size()) {
 			return slot;
 		}
-		return slot - baseIndexes.get(index - 1);
+		return slot - baseIndexes.getInt(index - 1);
 	}
 
 	@Nonnull
@@ -510,6 +717,7 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 		if (slot >= 0 && slot < handler.getSlots()) {
 			return true;
 		}
+		metrics.recordInvalidSlotAccess();
 		if (handlerIndex < 0 || handlerIndex >= storagePositions.size()) {
 			SophisticatedCore.LOGGER.debug("Invalid handler index calculated {} in controller's {} method. If you see many of these messages try replacing controller at {}", () -> handlerIndex, () -> methodName, () -> getBlockPos().toShortString());
 		} else {
@@ -530,7 +738,108 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 	}
 
 	protected ItemStack insertItem(ItemStack stack, boolean simulate, boolean insertIntoAnyEmpty) {
-		ItemStackKey stackKey = new ItemStackKey(stack);
+		//simulated inserts don't count towards sampling, they would skew the metrics towards callers that simulate before inserting
+		if (simulate || recordingInsert || !metrics.shouldSample()) {
+			return insertIntoCandidateStorages(stack, simulate, insertIntoAnyEmpty);
+		}
+
+		boolean stackIndexHit = stackStorages.containsKey(ItemStackKey.probe(stack));
+		recordingInsert = true;
+		storagesProbed = 0;
+		try {
+			ItemStack remaining = insertIntoCandidateStorages(stack, simulate, insertIntoAnyEmpty);
+			metrics.recordInsert(stackIndexHit, storagesProbed);
+			return remaining;
+		}
+		finally {
+			recordingInsert = false;
+		}
+	}
+
+	/**
+	 * Inserts all the stacks as one operation. Stacks of the same kind are merged and their candidate storages looked up just once, then every
+	 * storage gets all the stacks it is a candidate for in a single batch so that it saves and notifies about its changes once.
+	 *
+	 * @return stacks that couldn't be inserted, stacks of the same kind are merged together in the result and split by their max stack size
+	 */
+	public List<ItemStack> insertItems(List<ItemStack> stacks, boolean simulate) {
+		Object2IntLinkedOpenHashMap<ItemStackKey> remainingCounts = new Object2IntLinkedOpenHashMap<>();
+		for (ItemStack stack : stacks) {
+			addToRemainingCounts(remainingCounts, stack);
+		}
+
+		if (insertionRoutingPolicy != InsertionRoutingPolicy.FIRST_FIT) {
+			//policies other than first fit pick storage per stack so only the grouping applies
+			List<ItemStack> remaining = new ArrayList<>();
+			remainingCounts.object2IntEntrySet().forEach(entry -> {
+				ItemStack result = insertItem(ItemHandlerHelper.copyStackWithSize(entry.getKey().stack(), entry.getIntValue()), simulate, true);
+				if (!result.isEmpty()) {
+					InventoryHelper.addSplitByMaxStackSize(remaining, result);
+				}
+			});
+			return remaining;
+		}
+
+		insertBatchesIntoStorages(remainingCounts, stackStorages::get, simulate);
+		insertBatchesIntoStorages(remainingCounts, stackKey -> memorizedItemStorages.get(stackKey.stack().getItem()), simulate);
+		insertBatchesIntoStorages(remainingCounts, stackKey -> memorizedStackStorages.get(stackKey.hashCode()), simulate);
+		insertBatchesIntoStorages(remainingCounts, stackKey -> emptySlotsStorages, simulate);
+
+		List<ItemStack> remaining = new ArrayList<>();
+		remainingCounts.object2IntEntrySet().forEach(entry -> {
+			if (entry.getIntValue() > 0) {
+				InventoryHelper.addSplitByMaxStackSize(remaining, ItemHandlerHelper.copyStackWithSize(entry.getKey().stack(), entry.getIntValue()));
+			}
+		});
+		return remaining;
+	}
+
+	private void addToRemainingCounts(Object2IntMap<ItemStackKey> remainingCounts, ItemStack stack) {
+		if (stack.isEmpty()) {
+			return;
+		}
+		ItemStackKey stackKey = ItemStackKey.probe(stack);
+		if (remainingCounts.containsKey(stackKey)) {
+			remainingCounts.put(stackKey, remainingCounts.getInt(stackKey) + stack.getCount());
+		} else {
+			remainingCounts.put(stackKey.toStored(), stack.getCount());
+		}
+	}
+
+	private void insertBatchesIntoStorages(Object2IntMap<ItemStackKey> remainingCounts, Function<ItemStackKey, Set<BlockPos>> getCandidateStorages, boolean simulate) {
+		Map<BlockPos, List<ItemStackKey>> storageBatches = new LinkedHashMap<>();
+		remainingCounts.object2IntEntrySet().forEach(entry -> {
+			if (entry.getIntValue() > 0) {
+				Set<BlockPos> candidateStorages = getCandidateStorages.apply(entry.getKey());
+				if (candidateStorages != null) {
+					candidateStorages.forEach(storagePos -> storageBatches.computeIfAbsent(storagePos, pos -> new ArrayList<>()).add(entry.getKey()));
+				}
+			}
+		});
+
+		storageBatches.forEach((storagePos, stackKeys) -> {
+			getStorageHandler(storagePos).ifPresent(handler -> {
+				List<ItemStackKey> batchKeys = new ArrayList<>();
+				List<ItemStack> batch = new ArrayList<>();
+				for (ItemStackKey stackKey : stackKeys) {
+					int count = remainingCounts.getInt(stackKey);
+					if (count > 0 && handler.mayAccept(stackKey.stack())) {
+						batchKeys.add(stackKey);
+						batch.add(ItemHandlerHelper.copyStackWithSize(stackKey.stack(), count));
+					}
+				}
+				if (batch.isEmpty()) {
+					return;
+				}
+				List<ItemStack> notInserted = handler.insertItems(batch, simulate);
+				batchKeys.forEach(stackKey -> remainingCounts.put(stackKey, 0));
+				notInserted.forEach(stack -> addToRemainingCounts(remainingCounts, stack));
+			});
+		});
+	}
+
+	private ItemStack insertIntoCandidateStorages(ItemStack stack, boolean simulate, boolean insertIntoAnyEmpty) {
+		ItemStackKey stackKey = ItemStackKey.probe(stack);
 		ItemStack remaining = stack;
 
 		if (stackStorages.containsKey(stackKey)) {
@@ -541,7 +850,7 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 		if (memorizedItemStorages.containsKey(stack.getItem())) {
 			remaining = insertIntoStorages(memorizedItemStorages.get(stack.getItem()), remaining, simulate);
 		}
-		int stackHash = ItemStackKey.getHashCode(stack);
+		int stackHash = stackKey.hashCode();
 		if (memorizedStackStorages.containsKey(stackHash)) {
 			remaining = insertIntoStorages(memorizedStackStorages.get(stackHash), remaining, simulate);
 		}
@@ -550,10 +859,20 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 	}
 
 	private ItemStack insertIntoStorages(Set<BlockPos> positions, ItemStack stack, boolean simulate) {
+		return switch (insertionRoutingPolicy) {
+			case FIRST_FIT -> insertIntoStoragesInOrder(positions, null, stack, simulate);
+			case LEAST_LOADED -> insertIntoLeastLoadedStorageFirst(positions, stack, simulate);
+			case ROUND_ROBIN -> insertIntoStoragesRoundRobin(positions, stack, simulate);
+		};
+	}
+
+	private ItemStack insertIntoStoragesInOrder(Collection<BlockPos> candidates, @Nullable BlockPos skipPos, ItemStack stack, boolean simulate) {
 		ItemStack remaining = stack;
-		for (BlockPos storagePos : positions) {
-			ItemStack finalRemaining = remaining;
-			remaining = getInventoryHandlerValueFromHolder(storagePos, ins -> ins.insertItem(finalRemaining, simulate)).orElse(remaining);
+		for (BlockPos storagePos : candidates) {
+			if (storagePos.equals(skipPos)) {
+				continue;
+			}
+			remaining = insertIntoStorage(storagePos, remaining, simulate);
 			if (remaining.isEmpty()) {
 				return ItemStack.EMPTY;
 			}
@@ -561,6 +880,130 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 		return remaining;
 	}
 
+	private ItemStack insertIntoStorage(BlockPos storagePos, ItemStack stack, boolean simulate) {
+		ITrackedContentsItemHandler handler = getStorageHandler(storagePos).orElse(null);
+		if (handler == null || !handler.mayAccept(stack)) {
+			return stack;
+		}
+		ItemStack remaining = handler.insertItem(stack, simulate);
+		if (recordingInsert) {
+			storagesProbed++;
+			if (!simulate && remaining.getCount() != stack.getCount()) {
+				metrics.recordStorageInsert(storagePos);
+			}
+		}
+		return remaining;
+	}
+
+	private ItemStack insertIntoLeastLoadedStorageFirst(Set<BlockPos> positions, ItemStack stack, boolean simulate) {
+		initStorageLoads();
+		BlockPos leastLoadedPos = getLeastLoadedStorage(positions);
+		if (leastLoadedPos == null) {
+			return insertIntoStoragesInOrder(positions, null, stack, simulate);
+		}
+
+		ItemStack remaining = insertIntoStorage(leastLoadedPos, stack, simulate);
+		if (!simulate && remaining.getCount() != stack.getCount()) {
+			updateStorageLoad(leastLoadedPos);
+		}
+		if (remaining.isEmpty()) {
+			return ItemStack.EMPTY;
+		}
+		return insertIntoStoragesInOrder(positions, leastLoadedPos, remaining, simulate);
+	}
+
+	@Nullable
+	private BlockPos getLeastLoadedStorage(Set<BlockPos> positions) {
+		if (positions.size() < leastLoadedStorages.size()) {
+			//few candidates (usually storages holding the stack) are cheaper to look up than walking the ordering until one of them shows up
+			BlockPos leastLoadedPos = null;
+			double highestRatio = -1;
+			for (BlockPos storagePos : positions) {
+				if (storageEmptySlotRatios.containsKey(storagePos) && storageEmptySlotRatios.getDouble(storagePos) > highestRatio) {
+					highestRatio = storageEmptySlotRatios.getDouble(storagePos);
+					leastLoadedPos = storagePos;
+				}
+			}
+			return leastLoadedPos;
+		}
+		for (BlockPos storagePos : leastLoadedStorages) {
+			if (positions.contains(storagePos)) {
+				return storagePos;
+			}
+		}
+		return null;
+	}
+
+	private void initStorageLoads() {
+		if (storageLoadsInitialized || level == null) {
+			return;
+		}
+		storageLoadsInitialized = true;
+		storagePositions.forEach(this::updateStorageLoad);
+	}
+
+	private void updateStorageLoad(BlockPos storagePos) {
+		if (insertionRoutingPolicy != InsertionRoutingPolicy.LEAST_LOADED) {
+			return;
+		}
+		removeStorageLoad(storagePos);
+		getStorageHandler(storagePos).ifPresent(handler -> {
+			int slots = handler.getSlots();
+			storageEmptySlotRatios.put(storagePos, slots > 0 ? (double) handler.getEmptySlotCount() / slots : 0);
+			leastLoadedStorages.add(storagePos);
+		});
+	}
+
+	private void removeStorageLoad(BlockPos storagePos) {
+		//needs to leave the ordering while its ratio is still there as that is what the ordering looks it up by
+		if (storageEmptySlotRatios.containsKey(storagePos)) {
+			leastLoadedStorages.remove(storagePos);
+			storageEmptySlotRatios.removeDouble(storagePos);
+		}
+	}
+
+	private void clearStorageLoads() {
+		leastLoadedStorages.clear();
+		storageEmptySlotRatios.clear();
+		storageLoadsInitialized = false;
+	}
+
+	private ItemStack insertIntoStoragesRoundRobin(Set<BlockPos> positions, ItemStack stack, boolean simulate) {
+		//copy as the storages that receive items get moved to the back of the set
+		List<BlockPos> candidates = new ArrayList<>(positions);
+		ItemStack remaining = stack;
+		List<BlockPos> receivingPositions = new ArrayList<>();
+		for (BlockPos storagePos : candidates) {
+			ItemStack remainingAfter = insertIntoStorage(storagePos, remaining, simulate);
+			if (remainingAfter.getCount() != remaining.getCount()) {
+				receivingPositions.add(storagePos);
+			}
+			remaining = remainingAfter;
+			if (remaining.isEmpty()) {
+				break;
+			}
+		}
+		if (!simulate) {
+			//storages that got items move to the back which makes the next insert start from the storage after them
+			for (BlockPos storagePos : receivingPositions) {
+				if (positions.remove(storagePos)) {
+					positions.add(storagePos);
+				}
+			}
+		}
+		return remaining;
+	}
+
+	public InsertionRoutingPolicy getInsertionRoutingPolicy() {
+		return insertionRoutingPolicy;
+	}
+
+	public void setInsertionRoutingPolicy(InsertionRoutingPolicy insertionRoutingPolicy) {
+		this.insertionRoutingPolicy = insertionRoutingPolicy;
+		clearStorageLoads();
+		setChanged();
+	}
+
 	@Nonnull
 	@Override
 	public ItemStack extractItem(int slot, int amount, boolean simulate) {
@@ -572,7 +1015,11 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 		IItemHandlerModifiable handler = getHandlerFromIndex(handlerIndex);
 		slot = getSlotFromIndex(slot, handlerIndex);
 		if (validateHandlerSlotIndex(handler, handlerIndex, slot, "extractItem(int slot, int amount, boolean simulate)")) {
-			return handler.extractItem(slot, amount, simulate);
+			ItemStack extracted = handler.extractItem(slot, amount, simulate);
+			if (!simulate && !extracted.isEmpty() && metrics.shouldSample()) {
+				metrics.recordStorageExtract(storagePositions.get(handlerIndex));
+			}
+			return extracted;
 		}
 
 		return ItemStack.EMPTY;
@@ -628,6 +1075,7 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 	public void detachFromStoragesAndUnlinkBlocks() {
 		storagePositions.forEach(pos -> WorldHelper.getLoadedBlockEntity(level, pos, IControllableStorage.class).ifPresent(IControllableStorage::unregisterController));
 		linkedBlocks.forEach(linkedPos -> WorldHelper.getLoadedBlockEntity(level, linkedPos, ILinkable.class).ifPresent(ILinkable::unlinkFromController));
+		resolvedStorages.clear();
 	}
 
 	@Override
@@ -635,6 +1083,33 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 		super.saveAdditional(tag);
 
 		saveData(tag);
+		saveIndexSnapshot(tag);
+	}
+
+	private void saveIndexSnapshot(CompoundTag tag) {
+		ListTag snapshotTag = new ListTag();
+		for (BlockPos storagePos : storagePositions) {
+			getStorageIndexSnapshot(storagePos).ifPresent(snapshot -> snapshotTag.add(snapshot.serialize(storagePos)));
+		}
+		tag.put("indexSnapshot", snapshotTag);
+	}
+
+	private Optional<StorageIndexSnapshot> getStorageIndexSnapshot(BlockPos storagePos) {
+		StorageIndexSnapshot notYetUsedSnapshot = storageIndexSnapshots.get(storagePos);
+		if (notYetUsedSnapshot != null) {
+			return Optional.of(notYetUsedSnapshot);
+		}
+
+		long contentsVersion = getStorageHandler(storagePos).map(ITrackedContentsItemHandler::getContentsVersion).orElse(-1L);
+		Long restoredContentsVersion = restoredStorageContentsVersions.get(storagePos);
+		//contents of restored storage changed, but whether that got reflected in the index depends on whether the storage already went through its slots
+		if (contentsVersion < 0 || (restoredContentsVersion != null && restoredContentsVersion != contentsVersion)) {
+			return Optional.empty();
+		}
+		//snapshot is only trusted for the same storage contents, not just any storage that ends up at the position
+		Optional<UUID> contentsUuid = getStorage(storagePos).flatMap(storage -> storage.getStorageWrapper().getContentsUuid());
+		return contentsUuid.map(uuid -> new StorageIndexSnapshot(uuid, contentsVersion, storageStacks.getOrDefault(storagePos, Collections.emptySet()),
+				emptySlotsStorages.contains(storagePos)));
 	}
 
 	private CompoundTag saveData(CompoundTag tag) {
@@ -642,6 +1117,7 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 		NBTHelper.putList(tag, "linkedBlocks", linkedBlocks, p -> LongTag.valueOf(p.asLong()));
 		NBTHelper.putList(tag, "baseIndexes", baseIndexes, IntTag::valueOf);
 		tag.putInt("totalSlots", totalSlots);
+		tag.putString("insertionRoutingPolicy", insertionRoutingPolicy.getSerializedName());
 
 		return tag;
 	}
@@ -651,8 +1127,24 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 		super.load(tag);
 
 		storagePositions = NBTHelper.getCollection(tag, "storagePositions", Tag.TAG_LONG, t -> Optional.of(BlockPos.of(((LongTag) t).getAsLong())), ArrayList::new).orElseGet(ArrayList::new);
-		baseIndexes = NBTHelper.getCollection(tag, "baseIndexes", Tag.TAG_INT, t -> Optional.of(((IntTag) t).getAsInt()), ArrayList::new).orElseGet(ArrayList::new);
+		storagePositionsSet.clear();
+		storagePositionsSet.addAll(storagePositions);
+		//connections are not saved so the first removal after load falls back to full verification which rebuilds them
+		storageConnections.clear();
+		storageConnectionsKnown = false;
+		baseIndexes = NBTHelper.getCollection(tag, "baseIndexes", Tag.TAG_INT, t -> Optional.of(((IntTag) t).getAsInt()), IntArrayList::new).orElseGet(IntArrayList::new);
 		totalSlots = tag.getInt("totalSlots");
+		insertionRoutingPolicy = NBTHelper.getEnumConstant(tag, "insertionRoutingPolicy", InsertionRoutingPolicy::fromName).orElse(InsertionRoutingPolicy.FIRST_FIT);
+		clearStorageLoads();
+		storageIndexSnapshots.clear();
+		restoredStorageContentsVersions.clear();
+		ListTag snapshotTag = tag.getList("indexSnapshot", Tag.TAG_COMPOUND);
+		for (int i = 0; i < snapshotTag.size(); i++) {
+			CompoundTag storageSnapshotTag = snapshotTag.getCompound(i);
+			if (storageSnapshotTag.hasUUID("contentsUuid")) {
+				storageIndexSnapshots.put(BlockPos.of(storageSnapshotTag.getLong("pos")), StorageIndexSnapshot.deserialize(storageSnapshotTag));
+			}
+		}
 		linkedBlocks = NBTHelper.getCollection(tag, "linkedBlocks", Tag.TAG_LONG, t -> Optional.of(BlockPos.of(((LongTag) t).getAsLong())), LinkedHashSet::new).orElseGet(LinkedHashSet::new);
 	}
 
@@ -669,10 +1161,12 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 
 	public void addStorageWithEmptySlots(BlockPos storageBlockPos) {
 		emptySlotsStorages.add(storageBlockPos);
+		updateStorageLoad(storageBlockPos);
 	}
 
 	public void removeStorageWithEmptySlots(BlockPos storageBlockPos) {
 		emptySlotsStorages.remove(storageBlockPos);
+		updateStorageLoad(storageBlockPos);
 	}
 
 	public Set<BlockPos> getLinkedBlocks() {
@@ -682,4 +1176,34 @@ public abstract class ControllerBlockEntityBase extends BlockEntity implements I
 	public List<BlockPos> getStoragePositions() {
 		return storagePositions;
 	}
+
+	/**
+	 * Storage block entity resolved for a storage position. Stays valid until the block entity gets removed (which also happens when its chunk
+	 * unloads) or the storage asks the controller to invalidate it.
+	 */
+	private record ResolvedStorage(BlockEntity blockEntity, IControllableStorage storage) {}
+
+	private record StorageIndexSnapshot(UUID contentsUuid, long contentsVersion, Set<ItemStackKey> stacks, boolean hasEmptySlots) {
+		private CompoundTag serialize(BlockPos storagePos) {
+			CompoundTag tag = new CompoundTag();
+			tag.putLong("pos", storagePos.asLong());
+			tag.putUUID("contentsUuid", contentsUuid);
+			tag.putLong("contentsVersion", contentsVersion);
+			NBTHelper.putList(tag, "stacks", stacks, stackKey -> ItemHandlerHelper.copyStackWithSize(stackKey.stack(), 1).save(new CompoundTag()));
+			tag.putBoolean("hasEmptySlots", hasEmptySlots);
+			return tag;
+		}
+
+		private static StorageIndexSnapshot deserialize(CompoundTag tag) {
+			Set<ItemStackKey> stacks = new HashSet<>();
+			ListTag stacksTag = tag.getList("stacks", Tag.TAG_COMPOUND);
+			for (int i = 0; i < stacksTag.size(); i++) {
+				ItemStack stack = ItemStack.of(stacksTag.getCompound(i));
+				if (!stack.isEmpty()) {
+					stacks.add(new ItemStackKey(stack));
+				}
+			}
+			return new StorageIndexSnapshot(tag.getUUID("contentsUuid"), tag.getLong("contentsVersion"), stacks, tag.getBoolean("hasEmptySlots"));
+		}
+	}
 }
@@ -0,0 +1,145 @@
+package net.p3pp3rf1y.sophisticatedcore.controller;
+
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.p3pp3rf1y.sophisticatedcore.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Access counters of a controller. Operations are recorded only when metrics are enabled in config, so that with metrics disabled the cost is
+ * a config value read per operation. Inserts and extracts that actually change storage contents are sampled (just every n-th one is
+ * recorded), simulated ones are not recorded at all. Invalid slot accesses and connectivity verifications are rare enough to be counted
+ * exactly.
+ */
+public class ControllerMetrics {
+	private static final int[] PROBE_DEPTH_BUCKET_LIMITS = {0, 1, 2, 4, 8, 16};
+	private static final int TOP_STORAGES_TO_LIST = 5;
+
+	private int operationsSinceLastSample = 0;
+	private final Object2LongOpenHashMap<BlockPos> storageInserts = new Object2LongOpenHashMap<>();
+	private final Object2LongOpenHashMap<BlockPos> storageExtracts = new Object2LongOpenHashMap<>();
+	private final long[] insertProbeDepths = new long[PROBE_DEPTH_BUCKET_LIMITS.length + 1];
+	private long sampledInserts = 0;
+	private long stackIndexHits = 0;
+	private long stackIndexMisses = 0;
+	private long invalidSlotAccesses = 0;
+	private long connectivityVerifications = 0;
+	private long connectivityVerificationNanos = 0;
+
+	public boolean isEnabled() {
+		return Config.COMMON.getControllerMetricsSampleRate() > 0;
+	}
+
+	public boolean shouldSample() {
+		int sampleRate = Config.COMMON.getControllerMetricsSampleRate();
+		if (sampleRate <= 0) {
+			return false;
+		}
+		operationsSinceLastSample++;
+		if (operationsSinceLastSample >= sampleRate) {
+			operationsSinceLastSample = 0;
+			return true;
+		}
+		return false;
+	}
+
+	public void recordInsert(boolean stackIndexHit, int storagesProbed) {
+		sampledInserts++;
+		if (stackIndexHit) {
+			stackIndexHits++;
+		} else {
+			stackIndexMisses++;
+		}
+		int bucket = 0;
+		while (bucket < PROBE_DEPTH_BUCKET_LIMITS.length && storagesProbed > PROBE_DEPTH_BUCKET_LIMITS[bucket]) {
+			bucket++;
+		}
+		insertProbeDepths[bucket]++;
+	}
+
+	public void recordStorageInsert(BlockPos storagePos) {
+		storageInserts.addTo(storagePos, 1);
+	}
+
+	public void recordStorageExtract(BlockPos storagePos) {
+		storageExtracts.addTo(storagePos, 1);
+	}
+
+	public void recordInvalidSlotAccess() {
+		if (isEnabled()) {
+			invalidSlotAccesses++;
+		}
+	}
+
+	public void recordConnectivityVerification(long nanos) {
+		if (isEnabled()) {
+			connectivityVerifications++;
+			connectivityVerificationNanos += nanos;
+		}
+	}
+
+	public void removeStorage(BlockPos storagePos) {
+		storageInserts.removeLong(storagePos);
+		storageExtracts.removeLong(storagePos);
+	}
+
+	public void reset() {
+		operationsSinceLastSample = 0;
+		storageInserts.clear();
+		storageExtracts.clear();
+		Arrays.fill(insertProbeDepths, 0);
+		sampledInserts = 0;
+		stackIndexHits = 0;
+		stackIndexMisses = 0;
+		invalidSlotAccesses = 0;
+		connectivityVerifications = 0;
+		connectivityVerificationNanos = 0;
+	}
+
+	public List<String> getReport() {
+		List<String> lines = new ArrayList<>();
+		int sampleRate = Config.COMMON.getControllerMetricsSampleRate();
+		lines.add(sampleRate > 0 ? "Sampling 1 in " + sampleRate + " operations" : "Metrics are disabled in config (controllerMetricsSampleRate)");
+		lines.add("Sampled inserts: " + sampledInserts + ", stack index hits: " + stackIndexHits + ", misses: " + stackIndexMisses);
+		lines.add("Storages probed per insert: " + getProbeDepthHistogram());
+		lines.add("Invalid slot accesses (all): " + invalidSlotAccesses);
+		lines.add(String.format(Locale.ROOT, "Connectivity verifications (all): %d taking %.3f ms in total", connectivityVerifications, connectivityVerificationNanos / 1_000_000D));
+
+		List<BlockPos> storagePositions = new ArrayList<>(storageInserts.keySet());
+		storageExtracts.keySet().forEach(pos -> {
+			if (!storageInserts.containsKey(pos)) {
+				storagePositions.add(pos);
+			}
+		});
+		storagePositions.sort(Comparator.comparingLong((BlockPos pos) -> storageInserts.getLong(pos) + storageExtracts.getLong(pos)).reversed());
+		for (int i = 0; i < storagePositions.size() && i < TOP_STORAGES_TO_LIST; i++) {
+			BlockPos pos = storagePositions.get(i);
+			lines.add("Storage at " + pos.toShortString() + " - sampled inserts: " + storageInserts.getLong(pos) + ", extracts: " + storageExtracts.getLong(pos));
+		}
+		return lines;
+	}
+
+	private String getProbeDepthHistogram() {
+		StringBuilder histogram = new StringBuilder();
+		int previousLimit = -1;
+		for (int bucket = 0; bucket < insertProbeDepths.length; bucket++) {
+			if (bucket > 0) {
+				histogram.append(", ");
+			}
+			if (bucket == PROBE_DEPTH_BUCKET_LIMITS.length) {
+				histogram.append(previousLimit + 1).append("+");
+			} else {
+				int limit = PROBE_DEPTH_BUCKET_LIMITS[bucket];
+				histogram.append(previousLimit + 1 == limit ? String.valueOf(limit) : (previousLimit + 1) + "-" + limit);
+				previousLimit = limit;
+			}
+			histogram.append(": ").append(insertProbeDepths[bucket]);
+		}
+		return histogram.toString();
+	}
+}
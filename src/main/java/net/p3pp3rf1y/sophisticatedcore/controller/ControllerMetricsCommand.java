@@ -0,0 +1,42 @@
+package net.p3pp3rf1y.sophisticatedcore.controller;
+
+import com.mojang.brigadier.CommandDispatcher;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.commands.arguments.coordinates.BlockPosArgument;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.TextComponent;
+import net.p3pp3rf1y.sophisticatedcore.SophisticatedCore;
+import net.p3pp3rf1y.sophisticatedcore.util.WorldHelper;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public class ControllerMetricsCommand {
+	private static final String POS_ARGUMENT = "pos";
+
+	private ControllerMetricsCommand() {}
+
+	public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+		dispatcher.register(Commands.literal(SophisticatedCore.MOD_ID).requires(source -> source.hasPermission(2))
+				.then(Commands.literal("controllerMetrics")
+						.then(Commands.argument(POS_ARGUMENT, BlockPosArgument.blockPos())
+								.executes(context -> runOnController(context.getSource(), BlockPosArgument.getLoadedBlockPos(context, POS_ARGUMENT),
+										controller -> controller.getMetrics().getReport().forEach(line -> context.getSource().sendSuccess(new TextComponent(line), false))))
+								.then(Commands.literal("reset")
+										.executes(context -> runOnController(context.getSource(), BlockPosArgument.getLoadedBlockPos(context, POS_ARGUMENT), controller -> {
+											controller.getMetrics().reset();
+											context.getSource().sendSuccess(new TextComponent("Controller metrics reset"), false);
+										}))))));
+	}
+
+	private static int runOnController(CommandSourceStack source, BlockPos pos, Consumer<ControllerBlockEntityBase> action) {
+		Optional<ControllerBlockEntityBase> controller = WorldHelper.getLoadedBlockEntity(source.getLevel(), pos, ControllerBlockEntityBase.class);
+		if (controller.isEmpty()) {
+			source.sendFailure(new TextComponent("No storage controller at " + pos.toShortString()));
+			return 0;
+		}
+		action.accept(controller.get());
+		return 1;
+	}
+}
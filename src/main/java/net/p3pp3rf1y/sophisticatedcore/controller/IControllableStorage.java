@@ -4,9 +4,13 @@ import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.world.level.Level;
 import net.p3pp3rf1y.sophisticatedcore.api.IStorageWrapper;
+import net.p3pp3rf1y.sophisticatedcore.inventory.ItemStackKey;
 import net.p3pp3rf1y.sophisticatedcore.settings.memory.MemorySettingsCategory;
 import net.p3pp3rf1y.sophisticatedcore.util.WorldHelper;
 
+import java.util.Set;
+import java.util.function.Consumer;
+
 public interface IControllableStorage extends IControllerBoundable {
 
 	IStorageWrapper getStorageWrapper();
@@ -59,17 +63,30 @@ public interface IControllableStorage extends IControllerBoundable {
 
 	default void registerController(ControllerBlockEntityBase controllerBlockEntity) {
 		setControllerPos(controllerBlockEntity.getBlockPos());
-		registerListeners();
+		registerInventoryStackListeners();
+		registerMemorySettingsListeners();
+	}
+
+	/**
+	 * Registers controller that already knows what stacks the storage holds so that the storage doesn't need to go through its slots
+	 * right away just to tell the controller the same.
+	 */
+	default void registerController(ControllerBlockEntityBase controllerBlockEntity, Set<ItemStackKey> knownStacks, boolean knownHasEmptySlots) {
+		setControllerPos(controllerBlockEntity.getBlockPos());
+		runOnController(getStorageBlockLevel(), controller -> controller.invalidateStorageHandler(getStorageBlockPos()));
+		getStorageWrapper().getInventoryForInputOutput().registerTrackingListeners(getAddStackKeyListener(), getRemoveStackKeyListener(),
+				getAddFirstEmptySlotListener(), getRemoveLastEmptySlotListener(), knownStacks, knownHasEmptySlots);
+		registerMemorySettingsListeners();
 	}
 
 	default void unregisterController() {
+		runOnController(getStorageBlockLevel(), controller -> controller.invalidateStorageHandler(getStorageBlockPos()));
 		removeControllerPos();
 		getStorageWrapper().getInventoryForInputOutput().unregisterStackKeyListeners();
 		getStorageWrapper().getSettingsHandler().getTypeCategory(MemorySettingsCategory.class).unregisterListeners();
 	}
 
-	private void registerListeners() {
-		registerInventoryStackListeners();
+	private void registerMemorySettingsListeners() {
 		getStorageWrapper().getSettingsHandler().getTypeCategory(MemorySettingsCategory.class).registerListeners(
 				i -> runOnController(getStorageBlockLevel(), controller -> controller.addStorageMemorizedItem(getStorageBlockPos(), i)),
 				i -> runOnController(getStorageBlockLevel(), controller -> controller.removeStorageMemorizedItem(getStorageBlockPos(), i)),
@@ -79,12 +96,25 @@ public interface IControllableStorage extends IControllerBoundable {
 	}
 
 	default void registerInventoryStackListeners() {
-		getStorageWrapper().getInventoryForInputOutput().registerTrackingListeners(
-				isk -> runOnController(getStorageBlockLevel(), controller -> controller.addStorageStack(getStorageBlockPos(), isk)),
-				isk -> runOnController(getStorageBlockLevel(), controller -> controller.removeStorageStack(getStorageBlockPos(), isk)),
-				() -> runOnController(getStorageBlockLevel(), controller -> controller.addStorageWithEmptySlots(getStorageBlockPos())),
-				() -> runOnController(getStorageBlockLevel(), controller -> controller.removeStorageWithEmptySlots(getStorageBlockPos()))
-		);
+		runOnController(getStorageBlockLevel(), controller -> controller.invalidateStorageHandler(getStorageBlockPos()));
+		getStorageWrapper().getInventoryForInputOutput().registerTrackingListeners(getAddStackKeyListener(), getRemoveStackKeyListener(),
+				getAddFirstEmptySlotListener(), getRemoveLastEmptySlotListener());
+	}
+
+	private Consumer<ItemStackKey> getAddStackKeyListener() {
+		return isk -> runOnController(getStorageBlockLevel(), controller -> controller.addStorageStack(getStorageBlockPos(), isk));
+	}
+
+	private Consumer<ItemStackKey> getRemoveStackKeyListener() {
+		return isk -> runOnController(getStorageBlockLevel(), controller -> controller.removeStorageStack(getStorageBlockPos(), isk));
+	}
+
+	private Runnable getAddFirstEmptySlotListener() {
+		return () -> runOnController(getStorageBlockLevel(), controller -> controller.addStorageWithEmptySlots(getStorageBlockPos()));
+	}
+
+	private Runnable getRemoveLastEmptySlotListener() {
+		return () -> runOnController(getStorageBlockLevel(), controller -> controller.removeStorageWithEmptySlots(getStorageBlockPos()));
 	}
 
 	default void registerWithControllerOnLoad() {
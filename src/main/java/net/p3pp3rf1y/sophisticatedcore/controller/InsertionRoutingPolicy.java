@@ -0,0 +1,51 @@
+package net.p3pp3rf1y.sophisticatedcore.controller;
+
+import com.google.common.collect.ImmutableMap;
+import net.minecraft.util.StringRepresentable;
+
+import java.util.Map;
+
+/**
+ * Order in which controller offers inserted stacks to the storages that are candidates for them (storages that already hold the stack,
+ * have it memorized or have empty slots).
+ */
+public enum InsertionRoutingPolicy implements StringRepresentable {
+	/**
+	 * Storages are always tried in the order they got into the candidate set so the first one fills up before anything goes to the next.
+	 */
+	FIRST_FIT("first_fit"),
+	/**
+	 * Storage with the largest share of empty slots is tried first, the rest follow in first fit order. Shares are kept up to date from the
+	 * storages' empty slot notifications and inserts and refreshed periodically, so the choice can lag behind changes for a moment.
+	 */
+	LEAST_LOADED("least_loaded"),
+	/**
+	 * Storages that received items are moved to the back of the candidate set so that the next insert starts with the one that follows.
+	 */
+	ROUND_ROBIN("round_robin");
+
+	private final String name;
+
+	InsertionRoutingPolicy(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public String getSerializedName() {
+		return name;
+	}
+
+	private static final Map<String, InsertionRoutingPolicy> NAME_VALUES;
+
+	static {
+		ImmutableMap.Builder<String, InsertionRoutingPolicy> builder = new ImmutableMap.Builder<>();
+		for (InsertionRoutingPolicy value : InsertionRoutingPolicy.values()) {
+			builder.put(value.getSerializedName(), value);
+		}
+		NAME_VALUES = builder.build();
+	}
+
+	public static InsertionRoutingPolicy fromName(String name) {
+		return NAME_VALUES.getOrDefault(name, FIRST_FIT);
+	}
+}
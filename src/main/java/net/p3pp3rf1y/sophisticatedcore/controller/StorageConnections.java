@@ -0,0 +1,164 @@
+package net.p3pp3rf1y.sophisticatedcore.controller;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Spanning forest of a controller's storage network. Every connected storage points to the position it got connected through and storages
+ * connected directly to the controller or through linked blocks point to the controller position. When a storage is removed only the storages
+ * connected through it need to find another way to the controller instead of the whole network getting verified again.
+ */
+class StorageConnections {
+	private final BlockPos controllerPos;
+	private final Map<BlockPos, BlockPos> parents = new HashMap<>();
+	private final Map<BlockPos, Set<BlockPos>> children = new HashMap<>();
+
+	StorageConnections(BlockPos controllerPos) {
+		this.controllerPos = controllerPos;
+	}
+
+	void connect(BlockPos storagePos, BlockPos connectedThrough) {
+		parents.put(storagePos, connectedThrough);
+		children.computeIfAbsent(connectedThrough, pos -> new HashSet<>()).add(storagePos);
+	}
+
+	void disconnect(BlockPos storagePos) {
+		BlockPos connectedThrough = parents.remove(storagePos);
+		if (connectedThrough != null) {
+			children.computeIfPresent(connectedThrough, (pos, storageChildren) -> {
+				storageChildren.remove(storagePos);
+				return storageChildren.isEmpty() ? null : storageChildren;
+			});
+		}
+	}
+
+	void clear() {
+		parents.clear();
+		children.clear();
+	}
+
+	@Nullable
+	BlockPos getConnectedThrough(BlockPos storagePos) {
+		return parents.get(storagePos);
+	}
+
+	/**
+	 * Disconnects all storages that are connected through the storage, directly or through other storages.
+	 *
+	 * @return positions of the disconnected storages
+	 */
+	Set<BlockPos> detachConnectedThrough(BlockPos storagePos) {
+		Set<BlockPos> detached = new HashSet<>();
+		Deque<BlockPos> toDetach = new ArrayDeque<>();
+		toDetach.add(storagePos);
+		while (!toDetach.isEmpty()) {
+			Set<BlockPos> storageChildren = children.remove(toDetach.poll());
+			if (storageChildren != null) {
+				storageChildren.forEach(child -> {
+					parents.remove(child);
+					detached.add(child);
+					toDetach.add(child);
+				});
+			}
+		}
+		return detached;
+	}
+
+	/**
+	 * Connects detached storages back through their connected neighbors and then through each other. Storages that got reconnected are
+	 * removed from the passed in set so only the ones that lost their connection to the controller stay in it.
+	 */
+	void reconnect(Set<BlockPos> disconnectedStorages, Set<BlockPos> rootPositions, IStorageLookup storageLookup) {
+		Deque<BlockPos> reconnected = new ArrayDeque<>();
+		Iterator<BlockPos> it = disconnectedStorages.iterator();
+		while (it.hasNext()) {
+			BlockPos storagePos = it.next();
+			if (storageLookup.isStorage(storagePos)) {
+				BlockPos connectedThrough = findConnectedNeighbor(storagePos, rootPositions, storageLookup);
+				if (connectedThrough != null) {
+					connect(storagePos, connectedThrough);
+					it.remove();
+					reconnected.add(storagePos);
+				}
+			}
+		}
+
+		while (!reconnected.isEmpty()) {
+			BlockPos storagePos = reconnected.poll();
+			if (!storageLookup.canConnectStorages(storagePos)) {
+				continue;
+			}
+			for (Direction dir : Direction.values()) {
+				BlockPos pos = storagePos.offset(dir.getNormal());
+				if (disconnectedStorages.contains(pos) && storageLookup.isStorage(pos)) {
+					connect(pos, storagePos);
+					disconnectedStorages.remove(pos);
+					reconnected.add(pos);
+				}
+			}
+		}
+	}
+
+	@Nullable
+	BlockPos findConnectedNeighbor(BlockPos storagePos, Set<BlockPos> rootPositions, IStorageLookup storageLookup) {
+		if (rootPositions.contains(storagePos)) {
+			return controllerPos;
+		}
+		for (Direction dir : Direction.values()) {
+			BlockPos pos = storagePos.offset(dir.getNormal());
+			if (parents.containsKey(pos) && storageLookup.canConnectStorages(pos)) {
+				return pos;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Goes through the passed in storage positions from the root positions the way full verification of the network does, without changing
+	 * the connections.
+	 *
+	 * @return positions that are connected mapped to the position they got connected through
+	 */
+	Map<BlockPos, BlockPos> findConnected(Collection<BlockPos> storagePositions, Set<BlockPos> rootPositions, IStorageLookup storageLookup) {
+		Set<BlockPos> toVerify = new HashSet<>(storagePositions);
+		Map<BlockPos, BlockPos> connections = new HashMap<>();
+		Deque<BlockPos> toCheck = new ArrayDeque<>();
+		for (BlockPos rootPos : rootPositions) {
+			if (toVerify.remove(rootPos) && storageLookup.isStorage(rootPos)) {
+				connections.put(rootPos, controllerPos);
+				toCheck.add(rootPos);
+			}
+		}
+
+		while (!toCheck.isEmpty()) {
+			BlockPos storagePos = toCheck.poll();
+			if (!storageLookup.canConnectStorages(storagePos)) {
+				continue;
+			}
+			for (Direction dir : Direction.values()) {
+				BlockPos pos = storagePos.offset(dir.getNormal());
+				if (toVerify.remove(pos) && storageLookup.isStorage(pos)) {
+					connections.put(pos, storagePos);
+					toCheck.add(pos);
+				}
+			}
+		}
+		return connections;
+	}
+
+	interface IStorageLookup {
+		boolean isStorage(BlockPos pos);
+
+		boolean canConnectStorages(BlockPos pos);
+	}
+}
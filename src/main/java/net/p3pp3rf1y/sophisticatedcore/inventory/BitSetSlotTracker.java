@@ -0,0 +1,573 @@
+package net.p3pp3rf1y.sophisticatedcore.inventory;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.items.ItemHandlerHelper;
+import net.p3pp3rf1y.sophisticatedcore.SophisticatedCore;
+import net.p3pp3rf1y.sophisticatedcore.settings.memory.MemorySettingsCategory;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Slot tracker with the same behavior as {@link InventoryHandlerSlotTracker} that keeps its slot indexes in primitive structures -
+ * per slot key arrays, per key bitsets of slots and bitsets of empty slots - instead of boxed slot collections.
+ */
+public class BitSetSlotTracker implements ISlotTracker {
+	private final Map<ItemStackKey, BitSet> fullStackSlots = new HashMap<>();
+	private ItemStackKey[] fullSlotStacks = new ItemStackKey[0];
+	private final Map<ItemStackKey, BitSet> partiallyFilledStackSlots = new HashMap<>();
+	private ItemStackKey[] partiallyFilledSlotStacks = new ItemStackKey[0];
+	private final BitSet plainEmptySlots = new BitSet();
+	private final BitSet memorizedEmptySlots = new BitSet();
+	private int emptySlotCount = 0;
+	private final Object2IntOpenHashMap<ItemStackKey> stackCounts = new Object2IntOpenHashMap<>();
+	private int[] slotCounts = new int[0];
+	private final MemorySettingsCategory memorySettings;
+	private Consumer<ItemStackKey> onAddStackKey = sk -> {};
+	private Consumer<ItemStackKey> onRemoveStackKey = sk -> {};
+
+	private Runnable onAddFirstEmptySlot = () -> {};
+	private Runnable onRemoveLastEmptySlot = () -> {};
+	private int stackKeysVersion = 0;
+
+	private BooleanSupplier shouldInsertIntoEmpty = () -> true;
+
+	public BitSetSlotTracker(MemorySettingsCategory memorySettings) {
+		this.memorySettings = memorySettings;
+		memorySettings.setSlotSelectionChangedListener(this::onSlotSelectionChanged);
+	}
+
+	private void onSlotSelectionChanged(int slot) {
+		boolean selected = memorySettings.isSlotSelected(slot);
+		if (selected && plainEmptySlots.get(slot)) {
+			plainEmptySlots.clear(slot);
+			memorizedEmptySlots.set(slot);
+		} else if (!selected && memorizedEmptySlots.get(slot)) {
+			memorizedEmptySlots.clear(slot);
+			plainEmptySlots.set(slot);
+		}
+	}
+
+	private boolean isEmptySlot(int slot) {
+		return plainEmptySlots.get(slot) || memorizedEmptySlots.get(slot);
+	}
+
+	@Override
+	public void setShouldInsertIntoEmpty(BooleanSupplier shouldInsertIntoEmpty) {
+		this.shouldInsertIntoEmpty = shouldInsertIntoEmpty;
+	}
+
+	@Override
+	public Set<ItemStackKey> getFullStacks() {
+		return fullStackSlots.keySet();
+	}
+
+	@Override
+	public Set<ItemStackKey> getPartialStacks() {
+		return partiallyFilledStackSlots.keySet();
+	}
+
+	@Override
+	public int getFreeCapacity(InventoryHandler itemHandler, ItemStackKey stackKey) {
+		BitSet partialSlots = partiallyFilledStackSlots.get(stackKey);
+		if (partialSlots == null) {
+			return 0;
+		}
+		long freeCapacity = 0;
+		for (int slot = partialSlots.nextSetBit(0); slot >= 0; slot = partialSlots.nextSetBit(slot + 1)) {
+			freeCapacity += Math.max(0, itemHandler.getStackLimit(slot, stackKey.stack()) - itemHandler.getStackInSlot(slot).getCount());
+		}
+		return (int) Math.min(freeCapacity, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public boolean hasFreeCapacity(InventoryHandler itemHandler, ItemStackKey stackKey) {
+		BitSet partialSlots = partiallyFilledStackSlots.get(stackKey);
+		if (partialSlots == null) {
+			return false;
+		}
+		for (int slot = partialSlots.nextSetBit(0); slot >= 0; slot = partialSlots.nextSetBit(slot + 1)) {
+			if (itemHandler.getStackLimit(slot, stackKey.stack()) > itemHandler.getStackInSlot(slot).getCount()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int[] getSlotsWithStack(ItemStackKey stackKey) {
+		BitSet fullSlots = fullStackSlots.get(stackKey);
+		BitSet partialSlots = partiallyFilledStackSlots.get(stackKey);
+		if (fullSlots == null) {
+			return partialSlots == null ? new int[0] : partialSlots.stream().toArray();
+		} else if (partialSlots == null) {
+			return fullSlots.stream().toArray();
+		}
+		BitSet slots = (BitSet) fullSlots.clone();
+		slots.or(partialSlots);
+		return slots.stream().toArray();
+	}
+
+	private void ensureCapacity(int slot) {
+		if (slot >= fullSlotStacks.length) {
+			int newLength = Math.max(slot + 1, fullSlotStacks.length * 2);
+			fullSlotStacks = Arrays.copyOf(fullSlotStacks, newLength);
+			partiallyFilledSlotStacks = Arrays.copyOf(partiallyFilledSlotStacks, newLength);
+			slotCounts = Arrays.copyOf(slotCounts, newLength);
+		}
+	}
+
+	@Nullable
+	private ItemStackKey getFullSlotStack(int slot) {
+		return slot < fullSlotStacks.length ? fullSlotStacks[slot] : null;
+	}
+
+	@Nullable
+	private ItemStackKey getPartiallyFilledSlotStack(int slot) {
+		return slot < partiallyFilledSlotStacks.length ? partiallyFilledSlotStacks[slot] : null;
+	}
+
+	private void addPartiallyFilled(int slot, ItemStack stack) {
+		ItemStackKey stackKey = new ItemStackKey(stack);
+		partiallyFilledStackSlots.computeIfAbsent(stackKey, k -> {
+			if (!fullStackSlots.containsKey(k)) {
+				onStackKeyAdded(k);
+			}
+			return new BitSet();
+		}).set(slot);
+		ensureCapacity(slot);
+		partiallyFilledSlotStacks[slot] = stackKey;
+	}
+
+	private void addFull(int slot, ItemStack stack) {
+		ItemStackKey stackKey = new ItemStackKey(stack);
+		fullStackSlots.computeIfAbsent(stackKey, k -> {
+			if (!partiallyFilledStackSlots.containsKey(k)) {
+				onStackKeyAdded(k);
+			}
+			return new BitSet();
+		}).set(slot);
+		ensureCapacity(slot);
+		fullSlotStacks[slot] = stackKey;
+	}
+
+	private void removePartiallyFilled(int slot) {
+		ItemStackKey stackKey = getPartiallyFilledSlotStack(slot);
+		if (stackKey == null) {
+			return;
+		}
+		partiallyFilledSlotStacks[slot] = null;
+		@Nullable
+		BitSet partialSlots = partiallyFilledStackSlots.get(stackKey);
+		if (partialSlots == null) {
+			SophisticatedCore.LOGGER.error("Unstable ItemStack detected in slot tracking: {}", () -> stackKey.stack().toString());
+		} else {
+			partialSlots.clear(slot);
+		}
+		if (partialSlots == null || partialSlots.isEmpty()) {
+			partiallyFilledStackSlots.remove(stackKey);
+			if (!fullStackSlots.containsKey(stackKey)) {
+				onStackKeyRemoved(stackKey);
+			}
+		}
+	}
+
+	private void removeFull(int slot) {
+		ItemStackKey stackKey = getFullSlotStack(slot);
+		if (stackKey == null) {
+			return;
+		}
+		fullSlotStacks[slot] = null;
+		@Nullable
+		BitSet fullSlots = fullStackSlots.get(stackKey);
+		if (fullSlots == null) {
+			SophisticatedCore.LOGGER.error("Unstable ItemStack detected in slot tracking: {}", () -> stackKey.stack().toString());
+		} else {
+			fullSlots.clear(slot);
+		}
+		if (fullSlots == null || fullSlots.isEmpty()) {
+			fullStackSlots.remove(stackKey);
+			if (!partiallyFilledStackSlots.containsKey(stackKey)) {
+				onStackKeyRemoved(stackKey);
+			}
+		}
+	}
+
+	@Override
+	public Object2IntMap<ItemStackKey> getStackCounts() {
+		return stackCounts;
+	}
+
+	@Override
+	public void removeAndSetSlotIndexes(InventoryHandler inventoryHandler, int slot, ItemStack stack) {
+		removeSlotCount(slot);
+		setSlotIndexes(inventoryHandler, slot, stack);
+		addSlotCount(slot, stack);
+	}
+
+	private void removeSlotCount(int slot) {
+		if (slot >= slotCounts.length || slotCounts[slot] == 0) {
+			return;
+		}
+		ItemStackKey stackKey = getSlotStackKey(slot);
+		if (stackKey != null) {
+			int totalCount = stackCounts.getInt(stackKey) - slotCounts[slot];
+			if (totalCount > 0) {
+				stackCounts.put(stackKey, totalCount);
+			} else {
+				stackCounts.removeInt(stackKey);
+			}
+		}
+		slotCounts[slot] = 0;
+	}
+
+	private void addSlotCount(int slot, ItemStack stack) {
+		if (stack.isEmpty()) {
+			return;
+		}
+		ItemStackKey stackKey = getSlotStackKey(slot);
+		if (stackKey != null) {
+			slotCounts[slot] = stack.getCount();
+			stackCounts.addTo(stackKey, stack.getCount());
+		}
+	}
+
+	@Nullable
+	private ItemStackKey getSlotStackKey(int slot) {
+		ItemStackKey stackKey = getFullSlotStack(slot);
+		return stackKey != null ? stackKey : getPartiallyFilledSlotStack(slot);
+	}
+
+	private void setSlotIndexes(InventoryHandler inventoryHandler, int slot, ItemStack stack) {
+		if (stack.isEmpty()) {
+			removePartiallyFilled(slot);
+			removeFull(slot);
+			addEmptySlot(slot);
+			return;
+		}
+
+		if (isEmptySlot(slot)) {
+			removeEmpty(slot);
+		}
+
+		if (isPartiallyFilled(inventoryHandler, slot, stack)) {
+			setPartiallyFilled(slot, stack);
+		} else {
+			setFull(slot, stack);
+		}
+	}
+
+	private void setFull(int slot, ItemStack stack) {
+		ItemStackKey fullSlotStack = getFullSlotStack(slot);
+		if (fullSlotStack == null || fullSlotStack.hashCodeNotEquals(stack)) {
+			if (fullSlotStack != null) {
+				removeFull(slot);
+			}
+			addFull(slot, stack);
+		}
+		removePartiallyFilled(slot);
+	}
+
+	private void setPartiallyFilled(int slot, ItemStack stack) {
+		ItemStackKey partiallyFilledSlotStack = getPartiallyFilledSlotStack(slot);
+		if (partiallyFilledSlotStack == null || partiallyFilledSlotStack.hashCodeNotEquals(stack)) {
+			if (partiallyFilledSlotStack != null) {
+				removePartiallyFilled(slot);
+			}
+			addPartiallyFilled(slot, stack);
+		}
+		removeFull(slot);
+	}
+
+	private void removeEmpty(int slot) {
+		plainEmptySlots.clear(slot);
+		memorizedEmptySlots.clear(slot);
+		emptySlotCount--;
+		if (emptySlotCount == 0) {
+			onRemoveLastEmptySlot.run();
+		}
+	}
+
+	private void set(InventoryHandler inventoryHandler, int slot, ItemStack stack) {
+		if (stack.isEmpty()) {
+			addEmptySlot(slot);
+		} else {
+			if (isPartiallyFilled(inventoryHandler, slot, stack)) {
+				addPartiallyFilled(slot, stack);
+			} else {
+				addFull(slot, stack);
+			}
+		}
+	}
+
+	private void addEmptySlot(int slot) {
+		if (!isEmptySlot(slot)) {
+			if (memorySettings.isSlotSelected(slot)) {
+				memorizedEmptySlots.set(slot);
+			} else {
+				plainEmptySlots.set(slot);
+			}
+			emptySlotCount++;
+		}
+		if (emptySlotCount == 1) {
+			onAddFirstEmptySlot.run();
+		}
+	}
+
+	@Override
+	public void clear() {
+		stackKeysVersion++;
+		partiallyFilledStackSlots.clear();
+		Arrays.fill(partiallyFilledSlotStacks, null);
+		stackCounts.clear();
+		Arrays.fill(slotCounts, 0);
+	}
+
+	@Override
+	public void refreshSlotIndexesFrom(InventoryHandler itemHandler) {
+		fullStackSlots.keySet().forEach(this::onStackKeyRemoved);
+		fullStackSlots.clear();
+		partiallyFilledStackSlots.keySet().forEach(this::onStackKeyRemoved);
+		partiallyFilledStackSlots.clear();
+
+		int slots = itemHandler.getSlots();
+		fullSlotStacks = new ItemStackKey[slots];
+		partiallyFilledSlotStacks = new ItemStackKey[slots];
+		stackCounts.clear();
+		slotCounts = new int[slots];
+
+		plainEmptySlots.clear();
+		memorizedEmptySlots.clear();
+		emptySlotCount = 0;
+		onRemoveLastEmptySlot.run();
+
+		for (int slot = 0; slot < slots; slot++) {
+			ItemStack stack = itemHandler.getStackInSlot(slot);
+			set(itemHandler, slot, stack);
+			addSlotCount(slot, stack);
+		}
+	}
+
+	@Override
+	public void updateSlotIndexes(InventoryHandler itemHandler, BitSet slots) {
+		Set<ItemStackKey> stackKeysBefore = new HashSet<>(fullStackSlots.keySet());
+		stackKeysBefore.addAll(partiallyFilledStackSlots.keySet());
+		boolean hadEmptySlots = emptySlotCount > 0;
+
+		Consumer<ItemStackKey> addStackKeyListener = onAddStackKey;
+		Consumer<ItemStackKey> removeStackKeyListener = onRemoveStackKey;
+		Runnable addFirstEmptySlotListener = onAddFirstEmptySlot;
+		Runnable removeLastEmptySlotListener = onRemoveLastEmptySlot;
+		registerListeners(sk -> {}, sk -> {}, () -> {}, () -> {});
+		try {
+			for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+				removeAndSetSlotIndexes(itemHandler, slot, itemHandler.getStackInSlot(slot));
+			}
+		}
+		finally {
+			registerListeners(addStackKeyListener, removeStackKeyListener, addFirstEmptySlotListener, removeLastEmptySlotListener);
+		}
+
+		stackKeysBefore.forEach(stackKey -> {
+			if (!fullStackSlots.containsKey(stackKey) && !partiallyFilledStackSlots.containsKey(stackKey)) {
+				onStackKeyRemoved(stackKey);
+			}
+		});
+		reportAddedStackKeys(fullStackSlots.keySet(), stackKeysBefore);
+		reportAddedStackKeys(partiallyFilledStackSlots.keySet(), stackKeysBefore);
+
+		boolean hasEmptySlots = emptySlotCount > 0;
+		if (hadEmptySlots && !hasEmptySlots) {
+			onRemoveLastEmptySlot.run();
+		} else if (!hadEmptySlots && hasEmptySlots) {
+			onAddFirstEmptySlot.run();
+		}
+	}
+
+	private void reportAddedStackKeys(Set<ItemStackKey> stackKeys, Set<ItemStackKey> stackKeysBefore) {
+		for (ItemStackKey stackKey : stackKeys) {
+			if (stackKeysBefore.add(stackKey)) {
+				onStackKeyAdded(stackKey);
+			}
+		}
+	}
+
+	private boolean isPartiallyFilled(InventoryHandler itemHandler, int slot, ItemStack stack) {
+		return stack.getCount() < itemHandler.getStackLimit(slot, stack);
+	}
+
+	@Override
+	public ItemStack insertItemIntoHandler(InventoryHandler itemHandler, IItemHandlerInserter inserter, UnaryOperator<ItemStack> overflowHandler, ItemStack stack, boolean simulate) {
+		ItemStackKey stackKey = ItemStackKey.probe(stack);
+		ItemStack remainingStack = handleOverflow(overflowHandler, stackKey, stack);
+		if (remainingStack.isEmpty()) {
+			return remainingStack;
+		}
+		remainingStack = insertIntoSlotsThatMatchStack(inserter, remainingStack, simulate, stackKey);
+		if (!remainingStack.isEmpty()) {
+			remainingStack = insertIntoEmptySlots(inserter, remainingStack, simulate);
+		}
+		if (!remainingStack.isEmpty()) {
+			remainingStack = handleOverflow(overflowHandler, stackKey, remainingStack);
+		}
+		return remainingStack;
+	}
+
+	@Override
+	public ItemStack insertItemIntoHandler(InventoryHandler itemHandler, IItemHandlerInserter inserter, UnaryOperator<ItemStack> overflowHandler, int slot, ItemStack stack, boolean simulate) {
+		ItemStackKey stackKey = ItemStackKey.probe(stack);
+		ItemStack remainingStack = stack;
+		remainingStack = handleOverflow(overflowHandler, stackKey, remainingStack);
+		if (remainingStack.isEmpty()) {
+			return remainingStack;
+		}
+
+		ItemStack existing = itemHandler.getStackInSlot(slot);
+		boolean wasEmpty = existing.isEmpty();
+
+		boolean doesNotMatchCurrentSlot = !ItemHandlerHelper.canItemStacksStack(stack, existing);
+		if (wasEmpty || doesNotMatchCurrentSlot) {
+			remainingStack = insertIntoSlotsThatMatchStack(inserter, remainingStack, simulate, stackKey);
+		}
+		if (!remainingStack.isEmpty() && doesNotMatchCurrentSlot) {
+			remainingStack = insertIntoEmptySlots(inserter, remainingStack, simulate);
+		}
+		if (!remainingStack.isEmpty() && (!isEmptySlot(slot) || shouldInsertIntoEmpty.getAsBoolean())) {
+			remainingStack = inserter.insertItem(slot, remainingStack, simulate);
+		}
+
+		if (!remainingStack.isEmpty()) {
+			remainingStack = handleOverflow(overflowHandler, stackKey, remainingStack);
+		}
+
+		return remainingStack;
+	}
+
+	@Override
+	public void registerListeners(Consumer<ItemStackKey> onAddStackKey, Consumer<ItemStackKey> onRemoveStackKey, Runnable onAddFirstEmptySlot, Runnable onRemoveLastEmptySlot) {
+		this.onAddStackKey = onAddStackKey;
+		this.onRemoveStackKey = onRemoveStackKey;
+		this.onAddFirstEmptySlot = onAddFirstEmptySlot;
+		this.onRemoveLastEmptySlot = onRemoveLastEmptySlot;
+	}
+
+	@Override
+	public void unregisterStackKeyListeners() {
+		onAddStackKey = sk -> {};
+		onRemoveStackKey = sk -> {};
+	}
+
+	@Override
+	public boolean hasEmptySlots() {
+		return shouldInsertIntoEmpty.getAsBoolean() && emptySlotCount > 0;
+	}
+
+	@Override
+	public int getEmptySlotCount() {
+		return emptySlotCount;
+	}
+
+	@Override
+	public int getStackKeysVersion() {
+		return stackKeysVersion;
+	}
+
+	private void onStackKeyAdded(ItemStackKey stackKey) {
+		stackKeysVersion++;
+		onAddStackKey.accept(stackKey);
+	}
+
+	private void onStackKeyRemoved(ItemStackKey stackKey) {
+		stackKeysVersion++;
+		onRemoveStackKey.accept(stackKey);
+	}
+
+	private ItemStack handleOverflow(UnaryOperator<ItemStack> overflowHandler, ItemStackKey stackKey, ItemStack remainingStack) {
+		BitSet fullSlots = fullStackSlots.get(stackKey);
+		if (fullSlots != null && !fullSlots.isEmpty()) {
+			remainingStack = overflowHandler.apply(remainingStack);
+		}
+		return remainingStack;
+	}
+
+	private ItemStack insertIntoSlotsThatMatchStack(IItemHandlerInserter inserter, ItemStack stack, boolean simulate, ItemStackKey stackKey) {
+		ItemStack remainingStack = stack;
+
+		BitSet slots = partiallyFilledStackSlots.get(stackKey);
+		int sizeBefore = slots == null ? 0 : slots.cardinality();
+		int i = 0;
+		// Always taking first set bit here and looking the bitset up again in every iteration as void/compacting react to inserts and go into this logic
+		// as well which updates the bitsets outside of this loop. The increment is here just in case updating cache fails to prevent infinite loop
+		while ((slots = partiallyFilledStackSlots.get(stackKey)) != null && !slots.isEmpty() && i++ < sizeBefore) {
+			int matchingSlot = slots.nextSetBit(0);
+			remainingStack = inserter.insertItem(matchingSlot, remainingStack, simulate);
+			if (remainingStack.isEmpty()) {
+				break;
+			}
+		}
+		return remainingStack;
+	}
+
+	private ItemStack insertIntoEmptySlots(IItemHandlerInserter inserter, ItemStack stack, boolean simulate) {
+		ItemStack remainingStack = stack.copy();
+		remainingStack = insertIntoEmptyMemorySlots(inserter, simulate, remainingStack);
+		if (shouldInsertIntoEmpty.getAsBoolean() && !remainingStack.isEmpty()) {
+			int sizeBefore = plainEmptySlots.cardinality();
+			int i = 0;
+			// Always taking first set bit here for the same reason as in insertIntoSlotsThatMatchStack - void/compacting reacting to inserts update
+			// empty slots outside of this loop. The increment is here just in case updating cache fails to prevent infinite loop
+			while (!plainEmptySlots.isEmpty() && i++ < sizeBefore) {
+				int slot = plainEmptySlots.nextSetBit(0);
+				remainingStack = inserter.insertItem(slot, remainingStack, simulate);
+				if (remainingStack.isEmpty()) {
+					break;
+				}
+			}
+		}
+
+		return remainingStack;
+	}
+
+	private ItemStack insertIntoEmptyMemorySlots(IItemHandlerInserter inserter, boolean simulate, ItemStack stack) {
+		ItemStack remainingStack = stack;
+		Map<Item, Set<Integer>> memoryFilterItemSlots = memorySettings.getFilterItemSlots();
+		Item item = remainingStack.getItem();
+		if (memoryFilterItemSlots.containsKey(item)) {
+			for (int memorySlot : memoryFilterItemSlots.get(item)) {
+				if (memorizedEmptySlots.get(memorySlot)) {
+					remainingStack = inserter.insertItem(memorySlot, remainingStack, simulate);
+					if (remainingStack.isEmpty()) {
+						break;
+					}
+				}
+			}
+		}
+
+		Map<Integer, Set<Integer>> memoryFilterStackSlots = memorySettings.getFilterStackSlots();
+		if (!memoryFilterStackSlots.isEmpty()) {
+			int stackHash = ItemStackKey.getHashCode(remainingStack);
+			if (memoryFilterStackSlots.containsKey(stackHash)) {
+				for (int memorySlot : memoryFilterStackSlots.get(stackHash)) {
+					if (memorizedEmptySlots.get(memorySlot)) {
+						remainingStack = inserter.insertItem(memorySlot, remainingStack, simulate);
+						if (remainingStack.isEmpty()) {
+							break;
+						}
+					}
+				}
+			}
+		}
+		return remainingStack;
+	}
+}
@@ -5,6 +5,7 @@ import net.minecraftforge.items.IItemHandler;
 import net.p3pp3rf1y.sophisticatedcore.upgrades.FilterLogic;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -13,7 +14,7 @@ import java.util.function.Consumer;
 public class FilteredItemHandler<T extends IItemHandler> implements IItemHandler {
 	protected final T inventoryHandler;
 	protected final List<FilterLogic> inputFilters;
-	private final List<FilterLogic> outputFilters;
+	protected final List<FilterLogic> outputFilters;
 
 	public FilteredItemHandler(T inventoryHandler, List<FilterLogic> inputFilters, List<FilterLogic> outputFilters) {
 		this.inventoryHandler = inventoryHandler;
@@ -54,12 +55,19 @@ public class FilteredItemHandler<T extends IItemHandler> implements IItemHandler
 			return inventoryHandler.extractItem(slot, amount, simulate);
 		}
 
+		if (outputFiltersMatchStack(getStackInSlot(slot))) {
+			return inventoryHandler.extractItem(slot, amount, simulate);
+		}
+		return ItemStack.EMPTY;
+	}
+
+	protected boolean outputFiltersMatchStack(ItemStack stack) {
 		for (FilterLogic filter : outputFilters) {
-			if (filter.matchesFilter(getStackInSlot(slot))) {
-				return inventoryHandler.extractItem(slot, amount, simulate);
+			if (filter.matchesFilter(stack)) {
+				return true;
 			}
 		}
-		return ItemStack.EMPTY;
+		return false;
 	}
 
 	@Override
@@ -96,6 +104,27 @@ public class FilteredItemHandler<T extends IItemHandler> implements IItemHandler
 			return stack;
 		}
 
+		@Override
+		public List<ItemStack> insertItems(List<ItemStack> stacks, boolean simulate) {
+			if (inputFilters.isEmpty()) {
+				return inventoryHandler.insertItems(stacks, simulate);
+			}
+
+			List<ItemStack> matchingStacks = new ArrayList<>();
+			List<ItemStack> remaining = new ArrayList<>();
+			for (ItemStack stack : stacks) {
+				if (inputFiltersMatchStack(stack)) {
+					matchingStacks.add(stack);
+				} else if (!stack.isEmpty()) {
+					remaining.add(stack);
+				}
+			}
+			if (!matchingStacks.isEmpty()) {
+				remaining.addAll(inventoryHandler.insertItems(matchingStacks, simulate));
+			}
+			return remaining;
+		}
+
 		@Override
 		public Set<ItemStackKey> getTrackedStacks() {
 			Set<ItemStackKey> ret = new HashSet<>();
@@ -145,5 +174,46 @@ public class FilteredItemHandler<T extends IItemHandler> implements IItemHandler
 		public boolean hasEmptySlots() {
 			return inventoryHandler.hasEmptySlots();
 		}
+
+		@Override
+		public long getContentsVersion() {
+			return inventoryHandler.getContentsVersion();
+		}
+
+		@Override
+		public int getEmptySlotCount() {
+			return inventoryHandler.getEmptySlotCount();
+		}
+
+		@Override
+		public int getFreeCapacity(ItemStackKey stackKey) {
+			return inventoryHandler.getFreeCapacity(stackKey);
+		}
+
+		@Override
+		public boolean hasFreeCapacity(ItemStackKey stackKey) {
+			return inventoryHandler.hasFreeCapacity(stackKey);
+		}
+
+		@Override
+		public boolean mayAccept(ItemStack stack) {
+			if (!inputFilters.isEmpty() && !inputFiltersMatchStack(stack)) {
+				return false;
+			}
+			return inventoryHandler.mayAccept(stack);
+		}
+
+		@Override
+		public int getStackCount(ItemStackKey stackKey) {
+			return inventoryHandler.getStackCount(stackKey);
+		}
+
+		@Override
+		public ItemStack extractItem(ItemStackKey stackKey, int amount, boolean simulate) {
+			if (!outputFilters.isEmpty() && !outputFiltersMatchStack(stackKey.stack())) {
+				return ItemStack.EMPTY;
+			}
+			return inventoryHandler.extractItem(stackKey, amount, simulate);
+		}
 	}
 }
@@ -1,7 +1,10 @@
 package net.p3pp3rf1y.sophisticatedcore.inventory;
 
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMaps;
 import net.minecraft.world.item.ItemStack;
 
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Set;
 import java.util.function.BooleanSupplier;
@@ -16,12 +19,38 @@ public interface ISlotTracker {
 
 	Set<ItemStackKey> getPartialStacks();
 
+	/**
+	 * @return indexes of slots that hold the stack in ascending order, empty array if the stack is not in any slot
+	 */
+	int[] getSlotsWithStack(ItemStackKey stackKey);
+
+	/**
+	 * @return how many more of the stack fit into partially filled slots that hold it
+	 */
+	int getFreeCapacity(InventoryHandler itemHandler, ItemStackKey stackKey);
+
+	/**
+	 * @return whether at least one more of the stack fits into partially filled slots that hold it, stops at the first such slot
+	 */
+	boolean hasFreeCapacity(InventoryHandler itemHandler, ItemStackKey stackKey);
+
+	/**
+	 * @return total counts of tracked stacks across all slots, kept up to date as slots change so this must not be modified by callers
+	 */
+	Object2IntMap<ItemStackKey> getStackCounts();
+
 	void removeAndSetSlotIndexes(InventoryHandler inventoryHandler, int slot, ItemStack stack);
 
 	void clear();
 
 	void refreshSlotIndexesFrom(InventoryHandler itemHandler);
 
+	/**
+	 * Updates indexes of just the passed in slots. Listeners are called only once all the slots are updated and only for net changes - stack keys
+	 * that weren't tracked before or stopped being tracked and change in whether there are any empty slots.
+	 */
+	void updateSlotIndexes(InventoryHandler itemHandler, BitSet slots);
+
 	ItemStack insertItemIntoHandler(InventoryHandler itemHandler, IItemHandlerInserter inserter, UnaryOperator<ItemStack> overflowHandler, ItemStack stack, boolean simulate);
 
 	ItemStack insertItemIntoHandler(InventoryHandler itemHandler, IItemHandlerInserter inserter, UnaryOperator<ItemStack> overflowHandler, int slot, ItemStack stack, boolean simulate);
@@ -32,6 +61,14 @@ public interface ISlotTracker {
 
 	boolean hasEmptySlots();
 
+	int getEmptySlotCount();
+
+	/**
+	 * @return number that changes whenever a stack key starts or stops being tracked, lets callers detect changes in the set of stacks
+	 * the inventory holds without registering listeners
+	 */
+	int getStackKeysVersion();
+
 	interface IItemHandlerInserter {
 		ItemStack insertItem(int slot, ItemStack stack, boolean simulate);
 	}
@@ -52,6 +89,26 @@ public interface ISlotTracker {
 			return Collections.emptySet();
 		}
 
+		@Override
+		public int[] getSlotsWithStack(ItemStackKey stackKey) {
+			return new int[0];
+		}
+
+		@Override
+		public int getFreeCapacity(InventoryHandler itemHandler, ItemStackKey stackKey) {
+			return 0;
+		}
+
+		@Override
+		public boolean hasFreeCapacity(InventoryHandler itemHandler, ItemStackKey stackKey) {
+			return false;
+		}
+
+		@Override
+		public Object2IntMap<ItemStackKey> getStackCounts() {
+			return Object2IntMaps.emptyMap();
+		}
+
 		@Override
 		public void removeAndSetSlotIndexes(InventoryHandler inventoryHandler, int slot, ItemStack stack) {
 			//noop
@@ -67,6 +124,11 @@ public interface ISlotTracker {
 			//noop
 		}
 
+		@Override
+		public void updateSlotIndexes(InventoryHandler itemHandler, BitSet slots) {
+			//noop
+		}
+
 		@Override
 		public ItemStack insertItemIntoHandler(InventoryHandler itemHandler, IItemHandlerInserter inserter, UnaryOperator<ItemStack> overflowHandler, ItemStack stack, boolean simulate) {
 			return stack;
@@ -91,5 +153,15 @@ public interface ISlotTracker {
 		public boolean hasEmptySlots() {
 			return false;
 		}
+
+		@Override
+		public int getEmptySlotCount() {
+			return 0;
+		}
+
+		@Override
+		public int getStackKeysVersion() {
+			return 0;
+		}
 	}
 }
@@ -1,5 +1,11 @@
 package net.p3pp3rf1y.sophisticatedcore.inventory;
 
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.items.ItemHandlerHelper;
+import net.p3pp3rf1y.sophisticatedcore.util.InventoryHelper;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
 
@@ -9,7 +15,129 @@ public interface ITrackedContentsItemHandler extends IItemHandlerSimpleInserter
 
 	void registerTrackingListeners(Consumer<ItemStackKey> onAddStackKey, Consumer<ItemStackKey> onRemoveStackKey, Runnable onAddFirstEmptySlot, Runnable onRemoveLastEmptySlot);
 
+	/**
+	 * Registers tracking listeners for someone who already knows what stacks the handler held, e.g. from a saved snapshot. The listeners are told
+	 * about stacks that are no longer there, new stacks and change in empty slots compared to the known state.
+	 */
+	default void registerTrackingListeners(Consumer<ItemStackKey> onAddStackKey, Consumer<ItemStackKey> onRemoveStackKey, Runnable onAddFirstEmptySlot, Runnable onRemoveLastEmptySlot,
+			Set<ItemStackKey> knownStacks, boolean knownHasEmptySlots) {
+		registerTrackingListeners(onAddStackKey, onRemoveStackKey, onAddFirstEmptySlot, onRemoveLastEmptySlot);
+		Set<ItemStackKey> trackedStacks = getTrackedStacks();
+		knownStacks.forEach(stackKey -> {
+			if (!trackedStacks.contains(stackKey)) {
+				onRemoveStackKey.accept(stackKey);
+			}
+		});
+		trackedStacks.forEach(stackKey -> {
+			if (!knownStacks.contains(stackKey)) {
+				onAddStackKey.accept(stackKey);
+			}
+		});
+		boolean hasEmptySlots = hasEmptySlots();
+		if (hasEmptySlots && !knownHasEmptySlots) {
+			onAddFirstEmptySlot.run();
+		} else if (!hasEmptySlots && knownHasEmptySlots) {
+			onRemoveLastEmptySlot.run();
+		}
+	}
+
 	void unregisterStackKeyListeners();
 
+	/**
+	 * @return version of the contents that changes whenever they change, -1 if the handler doesn't keep one
+	 */
+	default long getContentsVersion() {
+		return -1;
+	}
+
 	boolean hasEmptySlots();
+
+	default int getEmptySlotCount() {
+		int emptySlots = 0;
+		for (int slot = 0; slot < getSlots(); slot++) {
+			if (getStackInSlot(slot).isEmpty()) {
+				emptySlots++;
+			}
+		}
+		return emptySlots;
+	}
+
+	/**
+	 * Inserts all the stacks as one operation.
+	 *
+	 * @return stacks that couldn't be inserted, stacks of the same kind may be merged together in the result
+	 */
+	default List<ItemStack> insertItems(List<ItemStack> stacks, boolean simulate) {
+		List<ItemStack> remaining = new ArrayList<>();
+		for (ItemStack stack : stacks) {
+			ItemStack result = insertItem(stack, simulate);
+			if (!result.isEmpty()) {
+				remaining.add(result);
+			}
+		}
+		return remaining;
+	}
+
+	/**
+	 * @return how many more of the stack fit into slots that already hold it
+	 */
+	default int getFreeCapacity(ItemStackKey stackKey) {
+		long freeCapacity = 0;
+		for (int slot = 0; slot < getSlots(); slot++) {
+			ItemStack slotStack = getStackInSlot(slot);
+			if (stackKey.matches(slotStack)) {
+				freeCapacity += Math.max(0, Math.min(getSlotLimit(slot), slotStack.getMaxStackSize()) - slotStack.getCount());
+			}
+		}
+		return (int) Math.min(freeCapacity, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return whether at least one more of the stack fits into slots that already hold it
+	 */
+	default boolean hasFreeCapacity(ItemStackKey stackKey) {
+		for (int slot = 0; slot < getSlots(); slot++) {
+			ItemStack slotStack = getStackInSlot(slot);
+			if (stackKey.matches(slotStack)
+					&& Math.min(getSlotLimit(slot), slotStack.getMaxStackSize()) > slotStack.getCount()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Cheap check that lets callers skip handlers that would just return the stack from insert.
+	 *
+	 * @return false only if inserting the stack is sure to fail
+	 */
+	default boolean mayAccept(ItemStack stack) {
+		return true;
+	}
+
+	/**
+	 * @return total count of the stack across all slots
+	 */
+	default int getStackCount(ItemStackKey stackKey) {
+		int count = 0;
+		for (int slot = 0; slot < getSlots(); slot++) {
+			ItemStack slotStack = getStackInSlot(slot);
+			if (stackKey.matches(slotStack)) {
+				count += slotStack.getCount();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Extracts up to amount of the stack from whichever slots hold it.
+	 *
+	 * @return extracted stack, empty if nothing could be extracted
+	 */
+	default ItemStack extractItem(ItemStackKey stackKey, int amount, boolean simulate) {
+		if (amount <= 0) {
+			return ItemStack.EMPTY;
+		}
+		return InventoryHelper.extractFromInventory(ItemHandlerHelper.copyStackWithSize(stackKey.stack(), amount), this, simulate);
+	}
 }
@@ -7,6 +7,7 @@ import net.minecraft.nbt.Tag;
 import net.minecraft.world.item.ItemStack;
 import net.minecraftforge.items.ItemHandlerHelper;
 import net.minecraftforge.items.ItemStackHandler;
+import net.p3pp3rf1y.sophisticatedcore.Config;
 import net.p3pp3rf1y.sophisticatedcore.api.IStorageWrapper;
 import net.p3pp3rf1y.sophisticatedcore.settings.memory.MemorySettingsCategory;
 import net.p3pp3rf1y.sophisticatedcore.upgrades.IInsertResponseUpgrade;
@@ -15,7 +16,10 @@ import net.p3pp3rf1y.sophisticatedcore.upgrades.stack.StackUpgradeConfig;
 import net.p3pp3rf1y.sophisticatedcore.util.InventoryHelper;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -23,18 +27,35 @@ import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 
 public abstract class InventoryHandler extends ItemStackHandler implements ITrackedContentsItemHandler {
 	public static final String INVENTORY_TAG = "inventory";
 	private static final String REAL_COUNT_TAG = "realCount";
+	private static final String CONTENTS_VERSION_TAG = "contentsVersion";
 	protected final IStorageWrapper storageWrapper;
 	private final CompoundTag contentsNbt;
 	private final Runnable saveHandler;
 	private final List<IntConsumer> onContentsChangedListeners = new ArrayList<>();
 	private boolean persistent = true;
-	private final Map<Integer, CompoundTag> stackNbts = new LinkedHashMap<>();
+	//slot versions get bumped with every change notification and saved versions record what got written into the saved inventory tag, so
+	//finding out whether a slot needs saving doesn't need to look at its stack at all
+	private int[] slotVersions = new int[0];
+	private int[] savedSlotVersions = new int[0];
 
 	private ISlotTracker slotTracker = new ISlotTracker.Noop();
+	private int batchDepth = 0;
+	private final BitSet dirtySlots = new BitSet();
+	private boolean inTransaction = false;
+	private final BitSet transactionChangedSlots = new BitSet();
+	@Nullable
+	private CompoundTag savedInventoryTag = null;
+	@Nullable
+	private ListTag savedItemsTag = null;
+	private int[] savedItemTagIndexes = new int[0];
+	private long contentsVersion = 0;
+	@Nullable
+	private PendingTrackingListeners pendingTrackingListeners = null;
 
 	private int slotLimit;
 	private int maxStackSizeMultiplier;
@@ -50,7 +71,7 @@ public abstract class InventoryHandler extends ItemStackHandler implements ITrac
 		this.saveHandler = saveHandler;
 		setSlotLimit(slotLimit);
 		deserializeNBT(contentsNbt.getCompound(INVENTORY_TAG));
-		initStackNbts();
+		initSlotVersions();
 		isInitializing = false;
 	}
 
@@ -64,43 +85,208 @@ public abstract class InventoryHandler extends ItemStackHandler implements ITrac
 		super.setSize(stacks.size());
 	}
 
-	private void initStackNbts() {
-		for (int slot = 0; slot < stacks.size(); slot++) {
-			ItemStack slotStack = stacks.get(slot);
-			if (!slotStack.isEmpty()) {
-				stackNbts.put(slot, getSlotsStackNbt(slot, slotStack));
-			}
-		}
+	private void initSlotVersions() {
+		slotVersions = new int[stacks.size()];
+		savedSlotVersions = new int[stacks.size()];
 	}
 
 	@Override
 	public void onContentsChanged(int slot) {
 		super.onContentsChanged(slot);
-		if (persistent && updateSlotNbt(slot)) {
-			saveInventory();
-			for (IntConsumer onContentsChangedListener : onContentsChangedListeners) {
-				onContentsChangedListener.accept(slot);
+		slotVersions[slot]++;
+		//with listeners waiting the known contents would go stale if the change only hit the noop tracker, building the tracker now reconciles them
+		//and already reflects the changed slot
+		boolean trackerJustBuilt = pendingTrackingListeners != null;
+		if (trackerJustBuilt) {
+			initSlotTracker();
+		}
+		if (inTransaction) {
+			transactionChangedSlots.set(slot);
+			return;
+		}
+		//tracker is updated here so that it also picks up changes made directly to slot stacks which only notify about the change afterwards
+		if (!trackerJustBuilt) {
+			slotTracker.removeAndSetSlotIndexes(this, slot, getStackInSlot(slot));
+		}
+		if (persistent && isSlotUnsaved(slot)) {
+			if (batchDepth > 0) {
+				dirtySlots.set(slot);
+				return;
+			}
+			saveSlot(slot);
+			notifyContentsChanged(slot);
+		}
+	}
+
+	private void saveSlot(int slot) {
+		if (isSavedInventoryTagCurrent()) {
+			updateSavedItemTag(slot);
+		} else {
+			rebuildSavedInventoryTag();
+		}
+		incrementContentsVersion();
+		saveHandler.run();
+	}
+
+	@SuppressWarnings("ConstantConditions") //called only after saved inventory tag is updated or rebuilt so it's not null
+	private void incrementContentsVersion() {
+		contentsVersion++;
+		savedInventoryTag.putLong(CONTENTS_VERSION_TAG, contentsVersion);
+	}
+
+	/**
+	 * @return version of the contents that is saved with them and changes whenever changed contents are saved, used to tell whether
+	 * information about the contents kept elsewhere is still current
+	 */
+	@Override
+	public long getContentsVersion() {
+		return contentsVersion;
+	}
+
+	private void saveDirtySlots(BitSet slots) {
+		if (isSavedInventoryTagCurrent()) {
+			for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+				if (isSlotUnsaved(slot)) {
+					updateSavedItemTag(slot);
+				}
 			}
+		} else {
+			rebuildSavedInventoryTag();
 		}
+		incrementContentsVersion();
+		saveHandler.run();
 	}
 
-	@SuppressWarnings("java:S3824")
-	//compute use here would be difficult as then there's no way of telling that value was newly created vs different than the one that needs to be set
-	private boolean updateSlotNbt(int slot) {
-		ItemStack slotStack = getStackInSlot(slot);
+	private boolean isSavedInventoryTagCurrent() {
+		return savedInventoryTag != null && contentsNbt.get(INVENTORY_TAG) == savedInventoryTag && savedInventoryTag.get("Items") == savedItemsTag
+				&& savedItemTagIndexes.length == stacks.size();
+	}
+
+	private void rebuildSavedInventoryTag() {
+		savedItemTagIndexes = new int[stacks.size()];
+		Arrays.fill(savedItemTagIndexes, -1);
+		savedItemsTag = new ListTag();
+		for (int slot = 0; slot < stacks.size(); slot++) {
+			savedSlotVersions[slot] = slotVersions[slot];
+			ItemStack slotStack = stacks.get(slot);
+			if (!slotStack.isEmpty()) {
+				savedItemTagIndexes[slot] = savedItemsTag.size();
+				savedItemsTag.add(getSlotsStackNbt(slot, slotStack));
+			}
+		}
+		savedInventoryTag = new CompoundTag();
+		savedInventoryTag.put("Items", savedItemsTag);
+		savedInventoryTag.putInt("Size", getSlots());
+		savedInventoryTag.putLong(CONTENTS_VERSION_TAG, contentsVersion);
+		contentsNbt.put(INVENTORY_TAG, savedInventoryTag);
+	}
+
+	//updates just the slot's entry in the saved items list, removal swaps the last entry in its place so that list doesn't need to be shifted
+	@SuppressWarnings("ConstantConditions") //called only after isSavedInventoryTagCurrent check which makes sure saved tags are not null
+	private void updateSavedItemTag(int slot) {
+		savedSlotVersions[slot] = slotVersions[slot];
+		ItemStack slotStack = stacks.get(slot);
+		int index = savedItemTagIndexes[slot];
 		if (slotStack.isEmpty()) {
-			if (stackNbts.containsKey(slot)) {
-				stackNbts.remove(slot);
-				return true;
+			if (index < 0) {
+				return;
+			}
+			int lastIndex = savedItemsTag.size() - 1;
+			Tag lastItemTag = savedItemsTag.remove(lastIndex);
+			if (index != lastIndex) {
+				savedItemsTag.set(index, lastItemTag);
+				savedItemTagIndexes[((CompoundTag) lastItemTag).getInt("Slot")] = index;
 			}
+			savedItemTagIndexes[slot] = -1;
+		} else if (index < 0) {
+			savedItemTagIndexes[slot] = savedItemsTag.size();
+			savedItemsTag.add(getSlotsStackNbt(slot, slotStack));
 		} else {
-			CompoundTag itemTag = getSlotsStackNbt(slot, slotStack);
-			if (!stackNbts.containsKey(slot) || !stackNbts.get(slot).equals(itemTag)) {
-				stackNbts.put(slot, itemTag);
-				return true;
+			savedItemsTag.set(index, getSlotsStackNbt(slot, slotStack));
+		}
+	}
+
+	/**
+	 * Runs changes with slot tracker updates, saving and contents changed listeners suspended. Once the changes are done the tracker is updated
+	 * reporting only net stack key changes to its listeners and all changed slots get saved at once. Meant for operations like sorting
+	 * which change many slots and often only temporarily.
+	 */
+	public void runAsTransaction(Runnable changes) {
+		if (inTransaction) {
+			changes.run();
+			return;
+		}
+
+		inTransaction = true;
+		try {
+			changes.run();
+		}
+		finally {
+			inTransaction = false;
+			completeTransaction();
+		}
+	}
+
+	private void completeTransaction() {
+		BitSet changedSlots = (BitSet) transactionChangedSlots.clone();
+		transactionChangedSlots.clear();
+		if (changedSlots.isEmpty()) {
+			return;
+		}
+		slotTracker.updateSlotIndexes(this, changedSlots);
+		if (!persistent) {
+			return;
+		}
+
+		BitSet slotsToSave = new BitSet();
+		for (int slot = changedSlots.nextSetBit(0); slot >= 0; slot = changedSlots.nextSetBit(slot + 1)) {
+			if (isSlotUnsaved(slot)) {
+				slotsToSave.set(slot);
 			}
 		}
-		return false;
+		if (slotsToSave.isEmpty()) {
+			return;
+		}
+		if (batchDepth > 0) {
+			dirtySlots.or(slotsToSave);
+			return;
+		}
+		saveDirtySlots(slotsToSave);
+		for (int slot = slotsToSave.nextSetBit(0); slot >= 0; slot = slotsToSave.nextSetBit(slot + 1)) {
+			notifyContentsChanged(slot);
+		}
+	}
+
+	private void notifyContentsChanged(int slot) {
+		for (IntConsumer onContentsChangedListener : onContentsChangedListeners) {
+			onContentsChangedListener.accept(slot);
+		}
+	}
+
+	private <T> T runInBatch(Supplier<T> action) {
+		batchDepth++;
+		try {
+			return action.get();
+		}
+		finally {
+			batchDepth--;
+			if (batchDepth == 0 && !dirtySlots.isEmpty()) {
+				flushBatchChanges();
+			}
+		}
+	}
+
+	private void flushBatchChanges() {
+		BitSet changedSlots = (BitSet) dirtySlots.clone();
+		dirtySlots.clear();
+		saveDirtySlots(changedSlots);
+		for (int slot = changedSlots.nextSetBit(0); slot >= 0; slot = changedSlots.nextSetBit(slot + 1)) {
+			notifyContentsChanged(slot);
+		}
+	}
+
+	private boolean isSlotUnsaved(int slot) {
+		return slotVersions[slot] != savedSlotVersions[slot];
 	}
 
 	private CompoundTag getSlotsStackNbt(int slot, ItemStack slotStack) {
@@ -114,6 +300,7 @@ public abstract class InventoryHandler extends ItemStackHandler implements ITrac
 	@Override
 	public void deserializeNBT(CompoundTag nbt) {
 		slotTracker.clear();
+		contentsVersion = nbt.getLong(CONTENTS_VERSION_TAG);
 		setSize(nbt.contains("Size", Tag.TAG_INT) ? nbt.getInt("Size") : stacks.size());
 		ListTag tagList = nbt.getList("Items", Tag.TAG_COMPOUND);
 		for (int i = 0; i < tagList.size(); i++) {
@@ -170,7 +357,6 @@ public abstract class InventoryHandler extends ItemStackHandler implements ITrac
 		if (existing.getCount() <= amount) {
 			if (!simulate) {
 				stacks.set(slot, ItemStack.EMPTY);
-				slotTracker.removeAndSetSlotIndexes(this, slot, ItemStack.EMPTY);
 				onContentsChanged(slot);
 				return existing;
 			} else {
@@ -180,7 +366,6 @@ public abstract class InventoryHandler extends ItemStackHandler implements ITrac
 			if (!simulate) {
 				ItemStack newStack = ItemHandlerHelper.copyStackWithSize(existing, existing.getCount() - amount);
 				stacks.set(slot, newStack);
-				slotTracker.removeAndSetSlotIndexes(this, slot, newStack);
 				onContentsChanged(slot);
 			}
 
@@ -196,9 +381,16 @@ public abstract class InventoryHandler extends ItemStackHandler implements ITrac
 	}
 
 	private void initSlotTracker() {
-		if (!(slotTracker instanceof InventoryHandlerSlotTracker)) {
-			slotTracker = new InventoryHandlerSlotTracker(storageWrapper.getSettingsHandler().getTypeCategory(MemorySettingsCategory.class));
+		if (slotTracker instanceof ISlotTracker.Noop) {
+			MemorySettingsCategory memorySettings = storageWrapper.getSettingsHandler().getTypeCategory(MemorySettingsCategory.class);
+			slotTracker = Config.COMMON.useBitSetSlotTracker() ? new BitSetSlotTracker(memorySettings) : new InventoryHandlerSlotTracker(memorySettings);
 			slotTracker.refreshSlotIndexesFrom(this);
+			if (pendingTrackingListeners != null) {
+				PendingTrackingListeners pending = pendingTrackingListeners;
+				pendingTrackingListeners = null;
+				ITrackedContentsItemHandler.super.registerTrackingListeners(pending.onAddStackKey(), pending.onRemoveStackKey(), pending.onAddFirstEmptySlot(),
+						pending.onRemoveLastEmptySlot(), pending.knownStacks(), pending.knownHasEmptySlots());
+			}
 		}
 	}
 
@@ -210,10 +402,6 @@ public abstract class InventoryHandler extends ItemStackHandler implements ITrac
 
 		ret = super.insertItem(slot, ret, simulate);
 
-		if (!simulate) {
-			slotTracker.removeAndSetSlotIndexes(this, slot, getStackInSlot(slot));
-		}
-
 		if (ret == stack) {
 			return ret;
 		}
@@ -251,12 +439,6 @@ public abstract class InventoryHandler extends ItemStackHandler implements ITrac
 		return remaining;
 	}
 
-	@Override
-	public void setStackInSlot(int slot, @Nonnull ItemStack stack) {
-		super.setStackInSlot(slot, stack);
-		slotTracker.removeAndSetSlotIndexes(this, slot, stack);
-	}
-
 	public void setPersistent(boolean persistent) {
 		this.persistent = persistent;
 	}
@@ -269,7 +451,8 @@ public abstract class InventoryHandler extends ItemStackHandler implements ITrac
 	protected abstract boolean isAllowed(ItemStack stack);
 
 	public void saveInventory() {
-		contentsNbt.put(INVENTORY_TAG, serializeNBT());
+		rebuildSavedInventoryTag();
+		incrementContentsVersion();
 		saveHandler.run();
 	}
 
@@ -288,7 +471,12 @@ public abstract class InventoryHandler extends ItemStackHandler implements ITrac
 	@Override
 	public CompoundTag serializeNBT() {
 		ListTag nbtTagList = new ListTag();
-		nbtTagList.addAll(stackNbts.values());
+		for (int slot = 0; slot < stacks.size(); slot++) {
+			ItemStack slotStack = stacks.get(slot);
+			if (!slotStack.isEmpty()) {
+				nbtTagList.add(getSlotsStackNbt(slot, slotStack));
+			}
+		}
 		CompoundTag nbt = new CompoundTag();
 		nbt.put("Items", nbtTagList);
 		nbt.putInt("Size", getSlots());
@@ -305,13 +493,51 @@ public abstract class InventoryHandler extends ItemStackHandler implements ITrac
 		return slotTracker.insertItemIntoHandler(this, this::insertItemInternal, this::triggerOverflowUpgrades, stack, simulate);
 	}
 
+	@Override
+	public List<ItemStack> insertItems(List<ItemStack> stacks, boolean simulate) {
+		initSlotTracker();
+		List<ItemStack> mergedStacks = mergeStacksOfTheSameKind(stacks);
+		if (simulate) {
+			return insertMergedStacks(mergedStacks, true);
+		}
+		return runInBatch(() -> insertMergedStacks(mergedStacks, false));
+	}
+
+	private List<ItemStack> insertMergedStacks(List<ItemStack> mergedStacks, boolean simulate) {
+		List<ItemStack> remaining = new ArrayList<>();
+		for (ItemStack stack : mergedStacks) {
+			ItemStack result = slotTracker.insertItemIntoHandler(this, this::insertItemInternal, this::triggerOverflowUpgrades, stack, simulate);
+			if (!result.isEmpty()) {
+				InventoryHelper.addSplitByMaxStackSize(remaining, result);
+			}
+		}
+		return remaining;
+	}
+
+	private static List<ItemStack> mergeStacksOfTheSameKind(List<ItemStack> stacks) {
+		Map<ItemStackKey, ItemStack> mergedStacks = new LinkedHashMap<>();
+		for (ItemStack stack : stacks) {
+			if (stack.isEmpty()) {
+				continue;
+			}
+			ItemStackKey stackKey = ItemStackKey.probe(stack);
+			ItemStack mergedStack = mergedStacks.get(stackKey);
+			if (mergedStack == null) {
+				mergedStacks.put(stackKey, stack.copy());
+			} else {
+				mergedStack.grow(stack.getCount());
+			}
+		}
+		return new ArrayList<>(mergedStacks.values());
+	}
+
 	public void changeSlots(int diff) {
 		NonNullList<ItemStack> previousStacks = stacks;
 		stacks = NonNullList.withSize(previousStacks.size() + diff, ItemStack.EMPTY);
 		for (int slot = 0; slot < previousStacks.size() && slot < stacks.size(); slot++) {
 			stacks.set(slot, previousStacks.get(slot));
 		}
-		initStackNbts();
+		initSlotVersions();
 		saveInventory();
 		slotTracker.refreshSlotIndexesFrom(this);
 	}
@@ -326,17 +552,75 @@ public abstract class InventoryHandler extends ItemStackHandler implements ITrac
 
 	@Override
 	public void registerTrackingListeners(Consumer<ItemStackKey> onAddStackKey, Consumer<ItemStackKey> onRemoveStackKey, Runnable onAddFirstEmptySlot, Runnable onRemoveLastEmptySlot) {
+		pendingTrackingListeners = null;
 		initSlotTracker();
 		slotTracker.registerListeners(onAddStackKey, onRemoveStackKey, onAddFirstEmptySlot, onRemoveLastEmptySlot);
 	}
 
+	/**
+	 * If the slot tracker hasn't been built yet the listeners are kept aside and only registered once something needs the tracker. The difference
+	 * between known and actual contents is reported to them at that point so building the tracker doesn't need to happen just to register them.
+	 */
+	@Override
+	public void registerTrackingListeners(Consumer<ItemStackKey> onAddStackKey, Consumer<ItemStackKey> onRemoveStackKey, Runnable onAddFirstEmptySlot, Runnable onRemoveLastEmptySlot,
+			Set<ItemStackKey> knownStacks, boolean knownHasEmptySlots) {
+		if (slotTracker instanceof ISlotTracker.Noop) {
+			pendingTrackingListeners = new PendingTrackingListeners(onAddStackKey, onRemoveStackKey, onAddFirstEmptySlot, onRemoveLastEmptySlot, knownStacks, knownHasEmptySlots);
+			return;
+		}
+		ITrackedContentsItemHandler.super.registerTrackingListeners(onAddStackKey, onRemoveStackKey, onAddFirstEmptySlot, onRemoveLastEmptySlot, knownStacks, knownHasEmptySlots);
+	}
+
 	@Override
 	public void unregisterStackKeyListeners() {
+		pendingTrackingListeners = null;
 		slotTracker.unregisterStackKeyListeners();
 	}
 
 	@Override
 	public boolean hasEmptySlots() {
+		initSlotTracker();
 		return slotTracker.hasEmptySlots();
 	}
+
+	@Override
+	public int getEmptySlotCount() {
+		initSlotTracker();
+		return slotTracker.getEmptySlotCount();
+	}
+
+	@Override
+	public int getFreeCapacity(ItemStackKey stackKey) {
+		initSlotTracker();
+		return slotTracker.getFreeCapacity(this, stackKey);
+	}
+
+	@Override
+	public boolean hasFreeCapacity(ItemStackKey stackKey) {
+		initSlotTracker();
+		return slotTracker.hasFreeCapacity(this, stackKey);
+	}
+
+	@Override
+	public boolean mayAccept(ItemStack stack) {
+		if (stack.isEmpty()) {
+			return false;
+		}
+		initSlotTracker();
+		if (slotTracker.getEmptySlotCount() > 0 || slotTracker.hasFreeCapacity(this, ItemStackKey.probe(stack))) {
+			return true;
+		}
+		//upgrades can take stacks even if there's no room for them in slots
+		return !storageWrapper.getUpgradeHandler().getWrappersThatImplementFromMainStorage(IInsertResponseUpgrade.class).isEmpty()
+				|| !storageWrapper.getUpgradeHandler().getWrappersThatImplement(IOverflowResponseUpgrade.class).isEmpty();
+	}
+
+	@Override
+	public int getStackCount(ItemStackKey stackKey) {
+		initSlotTracker();
+		return slotTracker.getStackCounts().getInt(stackKey);
+	}
+
+	private record PendingTrackingListeners(Consumer<ItemStackKey> onAddStackKey, Consumer<ItemStackKey> onRemoveStackKey, Runnable onAddFirstEmptySlot,
+			Runnable onRemoveLastEmptySlot, Set<ItemStackKey> knownStacks, boolean knownHasEmptySlots) {}
 }
@@ -1,5 +1,7 @@
 package net.p3pp3rf1y.sophisticatedcore.inventory;
 
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 import net.minecraftforge.items.ItemHandlerHelper;
@@ -7,9 +9,10 @@ import net.p3pp3rf1y.sophisticatedcore.SophisticatedCore;
 import net.p3pp3rf1y.sophisticatedcore.settings.memory.MemorySettingsCategory;
 
 import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -22,18 +25,56 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 	private final Map<Integer, ItemStackKey> fullSlotStacks = new HashMap<>();
 	private final Map<ItemStackKey, Set<Integer>> partiallyFilledStackSlots = new HashMap<>();
 	private final Map<Integer, ItemStackKey> partiallyFilledSlotStacks = new HashMap<>();
-	private final Set<Integer> emptySlots = new TreeSet<>();
+	private final TreeSet<Integer> plainEmptySlots = new TreeSet<>();
+	private final Set<Integer> memorizedEmptySlots = new HashSet<>();
+	private final Object2IntOpenHashMap<ItemStackKey> stackCounts = new Object2IntOpenHashMap<>();
+	private int[] slotCounts = new int[0];
 	private final MemorySettingsCategory memorySettings;
 	private Consumer<ItemStackKey> onAddStackKey = sk -> {};
 	private Consumer<ItemStackKey> onRemoveStackKey = sk -> {};
 
 	private Runnable onAddFirstEmptySlot = () -> {};
 	private Runnable onRemoveLastEmptySlot = () -> {};
+	private int stackKeysVersion = 0;
 
 	private BooleanSupplier shouldInsertIntoEmpty = () -> true;
 
 	public InventoryHandlerSlotTracker(MemorySettingsCategory memorySettings) {
 		this.memorySettings = memorySettings;
+		memorySettings.setSlotSelectionChangedListener(this::onSlotSelectionChanged);
+	}
+
+	private void onSlotSelectionChanged(int slot) {
+		boolean selected = memorySettings.isSlotSelected(slot);
+		if (selected && plainEmptySlots.remove(slot)) {
+			memorizedEmptySlots.add(slot);
+		} else if (!selected && memorizedEmptySlots.remove(slot)) {
+			plainEmptySlots.add(slot);
+		}
+	}
+
+	private boolean isEmptySlot(int slot) {
+		return plainEmptySlots.contains(slot) || memorizedEmptySlots.contains(slot);
+	}
+
+	@Override
+	public int getEmptySlotCount() {
+		return plainEmptySlots.size() + memorizedEmptySlots.size();
+	}
+
+	@Override
+	public int getStackKeysVersion() {
+		return stackKeysVersion;
+	}
+
+	private void onStackKeyAdded(ItemStackKey stackKey) {
+		stackKeysVersion++;
+		onAddStackKey.accept(stackKey);
+	}
+
+	private void onStackKeyRemoved(ItemStackKey stackKey) {
+		stackKeysVersion++;
+		onRemoveStackKey.accept(stackKey);
 	}
 
 	@Override
@@ -45,7 +86,7 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 		ItemStackKey stackKey = new ItemStackKey(stack);
 		partiallyFilledStackSlots.computeIfAbsent(stackKey, k -> {
 			if (!fullStackSlots.containsKey(k)) {
-				onAddStackKey.accept(k);
+				onStackKeyAdded(k);
 			}
 			return new TreeSet<>();
 		}).add(slot);
@@ -62,11 +103,54 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 		return partiallyFilledStackSlots.keySet();
 	}
 
+	@Override
+	public int getFreeCapacity(InventoryHandler itemHandler, ItemStackKey stackKey) {
+		Set<Integer> partialSlots = partiallyFilledStackSlots.get(stackKey);
+		if (partialSlots == null) {
+			return 0;
+		}
+		long freeCapacity = 0;
+		for (int slot : partialSlots) {
+			freeCapacity += Math.max(0, itemHandler.getStackLimit(slot, stackKey.stack()) - itemHandler.getStackInSlot(slot).getCount());
+		}
+		return (int) Math.min(freeCapacity, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public boolean hasFreeCapacity(InventoryHandler itemHandler, ItemStackKey stackKey) {
+		Set<Integer> partialSlots = partiallyFilledStackSlots.get(stackKey);
+		if (partialSlots == null) {
+			return false;
+		}
+		for (int slot : partialSlots) {
+			if (itemHandler.getStackLimit(slot, stackKey.stack()) > itemHandler.getStackInSlot(slot).getCount()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int[] getSlotsWithStack(ItemStackKey stackKey) {
+		Set<Integer> fullSlots = fullStackSlots.getOrDefault(stackKey, Collections.emptySet());
+		Set<Integer> partialSlots = partiallyFilledStackSlots.getOrDefault(stackKey, Collections.emptySet());
+		int[] slots = new int[fullSlots.size() + partialSlots.size()];
+		int i = 0;
+		for (int slot : fullSlots) {
+			slots[i++] = slot;
+		}
+		for (int slot : partialSlots) {
+			slots[i++] = slot;
+		}
+		Arrays.sort(slots);
+		return slots;
+	}
+
 	public void addFull(int slot, ItemStack stack) {
 		ItemStackKey stackKey = new ItemStackKey(stack);
 		fullStackSlots.computeIfAbsent(stackKey, k -> {
 			if (!partiallyFilledStackSlots.containsKey(k)) {
-				onAddStackKey.accept(k);
+				onStackKeyAdded(k);
 			}
 			return new HashSet<>();
 		}).add(slot);
@@ -86,7 +170,7 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 			if (partialSlots == null || partialSlots.isEmpty()) {
 				partiallyFilledStackSlots.remove(stackKey);
 				if (!fullStackSlots.containsKey(stackKey)) {
-					onRemoveStackKey.accept(stackKey);
+					onStackKeyRemoved(stackKey);
 				}
 			}
 		}
@@ -105,14 +189,61 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 			if (fullSlots == null || fullSlots.isEmpty()) {
 				fullStackSlots.remove(stackKey);
 				if (!partiallyFilledStackSlots.containsKey(stackKey)) {
-					onRemoveStackKey.accept(stackKey);
+					onStackKeyRemoved(stackKey);
 				}
 			}
 		}
 	}
 
+	@Override
+	public Object2IntMap<ItemStackKey> getStackCounts() {
+		return stackCounts;
+	}
+
 	@Override
 	public void removeAndSetSlotIndexes(InventoryHandler inventoryHandler, int slot, ItemStack stack) {
+		removeSlotCount(slot);
+		setSlotIndexes(inventoryHandler, slot, stack);
+		addSlotCount(slot, stack);
+	}
+
+	private void removeSlotCount(int slot) {
+		if (slot >= slotCounts.length || slotCounts[slot] == 0) {
+			return;
+		}
+		ItemStackKey stackKey = getSlotStackKey(slot);
+		if (stackKey != null) {
+			int totalCount = stackCounts.getInt(stackKey) - slotCounts[slot];
+			if (totalCount > 0) {
+				stackCounts.put(stackKey, totalCount);
+			} else {
+				stackCounts.removeInt(stackKey);
+			}
+		}
+		slotCounts[slot] = 0;
+	}
+
+	private void addSlotCount(int slot, ItemStack stack) {
+		if (stack.isEmpty()) {
+			return;
+		}
+		ItemStackKey stackKey = getSlotStackKey(slot);
+		if (stackKey != null) {
+			if (slot >= slotCounts.length) {
+				slotCounts = Arrays.copyOf(slotCounts, Math.max(slot + 1, slotCounts.length * 2));
+			}
+			slotCounts[slot] = stack.getCount();
+			stackCounts.addTo(stackKey, stack.getCount());
+		}
+	}
+
+	@Nullable
+	private ItemStackKey getSlotStackKey(int slot) {
+		ItemStackKey stackKey = fullSlotStacks.get(slot);
+		return stackKey != null ? stackKey : partiallyFilledSlotStacks.get(slot);
+	}
+
+	private void setSlotIndexes(InventoryHandler inventoryHandler, int slot, ItemStack stack) {
 		if (stack.isEmpty()) {
 			removePartiallyFilled(slot);
 			removeFull(slot);
@@ -120,7 +251,7 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 			return;
 		}
 
-		if (emptySlots.contains(slot)) {
+		if (isEmptySlot(slot)) {
 			removeEmpty(slot);
 		}
 
@@ -158,8 +289,9 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 	}
 
 	private void removeEmpty(int slot) {
-		emptySlots.remove(slot);
-		if (emptySlots.isEmpty()) {
+		plainEmptySlots.remove(slot);
+		memorizedEmptySlots.remove(slot);
+		if (getEmptySlotCount() == 0) {
 			onRemoveLastEmptySlot.run();
 		}
 	}
@@ -177,33 +309,89 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 	}
 
 	private void addEmptySlot(int slot) {
-		emptySlots.add(slot);
-		if (emptySlots.size() == 1) {
+		if (memorySettings.isSlotSelected(slot)) {
+			memorizedEmptySlots.add(slot);
+		} else {
+			plainEmptySlots.add(slot);
+		}
+		if (getEmptySlotCount() == 1) {
 			onAddFirstEmptySlot.run();
 		}
 	}
 
 	@Override
 	public void clear() {
+		stackKeysVersion++;
 		partiallyFilledStackSlots.clear();
 		partiallyFilledSlotStacks.clear();
+		stackCounts.clear();
+		Arrays.fill(slotCounts, 0);
 	}
 
 	@Override
 	public void refreshSlotIndexesFrom(InventoryHandler itemHandler) {
-		fullStackSlots.keySet().forEach(sk -> onRemoveStackKey.accept(sk));
+		fullStackSlots.keySet().forEach(this::onStackKeyRemoved);
 		fullStackSlots.clear();
 		fullSlotStacks.clear();
-		partiallyFilledStackSlots.keySet().forEach(sk -> onRemoveStackKey.accept(sk));
+		partiallyFilledStackSlots.keySet().forEach(this::onStackKeyRemoved);
 		partiallyFilledStackSlots.clear();
 		partiallyFilledSlotStacks.clear();
 
-		emptySlots.clear();
+		plainEmptySlots.clear();
+		memorizedEmptySlots.clear();
 		onRemoveLastEmptySlot.run();
 
+		stackCounts.clear();
+		slotCounts = new int[itemHandler.getSlots()];
+
 		for (int slot = 0; slot < itemHandler.getSlots(); slot++) {
 			ItemStack stack = itemHandler.getStackInSlot(slot);
 			set(itemHandler, slot, stack);
+			addSlotCount(slot, stack);
+		}
+	}
+
+	@Override
+	public void updateSlotIndexes(InventoryHandler itemHandler, BitSet slots) {
+		Set<ItemStackKey> stackKeysBefore = new HashSet<>(fullStackSlots.keySet());
+		stackKeysBefore.addAll(partiallyFilledStackSlots.keySet());
+		boolean hadEmptySlots = getEmptySlotCount() > 0;
+
+		Consumer<ItemStackKey> addStackKeyListener = onAddStackKey;
+		Consumer<ItemStackKey> removeStackKeyListener = onRemoveStackKey;
+		Runnable addFirstEmptySlotListener = onAddFirstEmptySlot;
+		Runnable removeLastEmptySlotListener = onRemoveLastEmptySlot;
+		registerListeners(sk -> {}, sk -> {}, () -> {}, () -> {});
+		try {
+			for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+				removeAndSetSlotIndexes(itemHandler, slot, itemHandler.getStackInSlot(slot));
+			}
+		}
+		finally {
+			registerListeners(addStackKeyListener, removeStackKeyListener, addFirstEmptySlotListener, removeLastEmptySlotListener);
+		}
+
+		stackKeysBefore.forEach(stackKey -> {
+			if (!fullStackSlots.containsKey(stackKey) && !partiallyFilledStackSlots.containsKey(stackKey)) {
+				onStackKeyRemoved(stackKey);
+			}
+		});
+		reportAddedStackKeys(fullStackSlots.keySet(), stackKeysBefore);
+		reportAddedStackKeys(partiallyFilledStackSlots.keySet(), stackKeysBefore);
+
+		boolean hasEmptySlots = getEmptySlotCount() > 0;
+		if (hadEmptySlots && !hasEmptySlots) {
+			onRemoveLastEmptySlot.run();
+		} else if (!hadEmptySlots && hasEmptySlots) {
+			onAddFirstEmptySlot.run();
+		}
+	}
+
+	private void reportAddedStackKeys(Set<ItemStackKey> stackKeys, Set<ItemStackKey> stackKeysBefore) {
+		for (ItemStackKey stackKey : stackKeys) {
+			if (stackKeysBefore.add(stackKey)) {
+				onStackKeyAdded(stackKey);
+			}
 		}
 	}
 
@@ -213,7 +401,7 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 
 	@Override
 	public ItemStack insertItemIntoHandler(InventoryHandler itemHandler, IItemHandlerInserter inserter, UnaryOperator<ItemStack> overflowHandler, ItemStack stack, boolean simulate) {
-		ItemStackKey stackKey = new ItemStackKey(stack);
+		ItemStackKey stackKey = ItemStackKey.probe(stack);
 		ItemStack remainingStack = handleOverflow(overflowHandler, stackKey, stack);
 		if (remainingStack.isEmpty()) {
 			return remainingStack;
@@ -230,7 +418,7 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 
 	@Override
 	public ItemStack insertItemIntoHandler(InventoryHandler itemHandler, IItemHandlerInserter inserter, UnaryOperator<ItemStack> overflowHandler, int slot, ItemStack stack, boolean simulate) {
-		ItemStackKey stackKey = new ItemStackKey(stack);
+		ItemStackKey stackKey = ItemStackKey.probe(stack);
 		ItemStack remainingStack = stack;
 		remainingStack = handleOverflow(overflowHandler, stackKey, remainingStack);
 		if (remainingStack.isEmpty()) {
@@ -247,7 +435,7 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 		if (!remainingStack.isEmpty() && doesNotMatchCurrentSlot) {
 			remainingStack = insertIntoEmptySlots(inserter, remainingStack, simulate);
 		}
-		if (!remainingStack.isEmpty() && (!emptySlots.contains(slot) || shouldInsertIntoEmpty.getAsBoolean())) {
+		if (!remainingStack.isEmpty() && (!isEmptySlot(slot) || shouldInsertIntoEmpty.getAsBoolean())) {
 			remainingStack = inserter.insertItem(slot, remainingStack, simulate);
 		}
 
@@ -274,7 +462,7 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 
 	@Override
 	public boolean hasEmptySlots() {
-		return shouldInsertIntoEmpty.getAsBoolean() && !emptySlots.isEmpty();
+		return shouldInsertIntoEmpty.getAsBoolean() && getEmptySlotCount() > 0;
 	}
 
 	private ItemStack handleOverflow(UnaryOperator<ItemStack> overflowHandler, ItemStackKey stackKey, ItemStack remainingStack) {
@@ -307,21 +495,13 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 		ItemStack remainingStack = stack.copy();
 		remainingStack = insertIntoEmptyMemorySlots(inserter, simulate, remainingStack);
 		if (shouldInsertIntoEmpty.getAsBoolean() && !remainingStack.isEmpty()) {
-			int sizeBefore = emptySlots.size();
+			int sizeBefore = plainEmptySlots.size();
 			int i = 0;
 			// Always taking first element here and iterating while not empty as iterating using iterator would produce CME due to void/compacting reacting to inserts
 			// and going into this logic as well and because of that causing collection to be updated outside of first level iterator. The increment is here just
 			// in case updating cache fails to prevent infinite loop
-			while (!emptySlots.isEmpty() && i++ < sizeBefore) {
-				Iterator<Integer> it = emptySlots.iterator();
-				int slot = it.next();
-				while (memorySettings.isSlotSelected(slot)) {
-					if (!it.hasNext()) {
-						return remainingStack;
-					}
-					slot = it.next();
-				}
-
+			while (!plainEmptySlots.isEmpty() && i++ < sizeBefore) {
+				int slot = plainEmptySlots.first();
 				remainingStack = inserter.insertItem(slot, remainingStack, simulate);
 				if (remainingStack.isEmpty()) {
 					break;
@@ -338,7 +518,7 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 		Item item = remainingStack.getItem();
 		if (memoryFilterItemSlots.containsKey(item)) {
 			for (int memorySlot : memoryFilterItemSlots.get(item)) {
-				if (emptySlots.contains(memorySlot)) {
+				if (memorizedEmptySlots.contains(memorySlot)) {
 					remainingStack = inserter.insertItem(memorySlot, remainingStack, simulate);
 					if (remainingStack.isEmpty()) {
 						break;
@@ -352,7 +532,7 @@ public class InventoryHandlerSlotTracker implements ISlotTracker {
 			int stackHash = ItemStackKey.getHashCode(remainingStack);
 			if (memoryFilterStackSlots.containsKey(stackHash)) {
 				for (int memorySlot : memoryFilterStackSlots.get(stackHash)) {
-					if (emptySlots.contains(memorySlot)) {
+					if (memorizedEmptySlots.contains(memorySlot)) {
 						remainingStack = inserter.insertItem(memorySlot, remainingStack, simulate);
 						if (remainingStack.isEmpty()) {
 							break;
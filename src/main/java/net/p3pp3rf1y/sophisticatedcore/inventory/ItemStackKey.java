@@ -1,21 +1,46 @@
 package net.p3pp3rf1y.sophisticatedcore.inventory;
 
-import net.minecraft.nbt.CompoundTag;
 import net.minecraft.world.item.ItemStack;
-import net.minecraftforge.fml.util.ObfuscationReflectionHelper;
 import net.minecraftforge.items.ItemHandlerHelper;
-import net.p3pp3rf1y.sophisticatedcore.SophisticatedCore;
 
-import javax.annotation.Nullable;
-import java.lang.reflect.Field;
+public final class ItemStackKey {
+	private final ItemStack stack;
+	private final int hash;
+	private final boolean probe;
 
-public record ItemStackKey(ItemStack stack) {
-	public ItemStack getStack() {
+	public ItemStackKey(ItemStack stack) {
+		this(stack.copy(), getHashCode(stack), false);
+	}
+
+	private ItemStackKey(ItemStack stack, int hash, boolean probe) {
+		this.stack = stack;
+		this.hash = hash;
+		this.probe = probe;
+	}
+
+	/**
+	 * Creates lookup only key that references the passed in stack instead of copying it. The hash is computed just once here so the stack
+	 * must not be changed while the key is in use. Probe keys must not be stored in maps / sets that outlive the lookup, use {@link #toStored()}
+	 * in that case.
+	 */
+	public static ItemStackKey probe(ItemStack stack) {
+		return new ItemStackKey(stack, getHashCode(stack), true);
+	}
+
+	/**
+	 * Returns key that is safe to keep - either this one if it already holds its own copy of the stack or a new one with a copy of the stack
+	 * and the already computed hash.
+	 */
+	public ItemStackKey toStored() {
+		return probe ? new ItemStackKey(stack.copy(), hash, false) : this;
+	}
+
+	public ItemStack stack() {
 		return stack;
 	}
 
-	public ItemStackKey(ItemStack stack) {
-		this.stack = stack.copy();
+	public ItemStack getStack() {
+		return stack;
 	}
 
 	@Override
@@ -23,7 +48,7 @@ public record ItemStackKey(ItemStack stack) {
 		if (this == o) {return true;}
 		if (o == null || getClass() != o.getClass()) {return false;}
 		ItemStackKey that = (ItemStackKey) o;
-		return ItemHandlerHelper.canItemStacksStack(stack, that.stack);
+		return hash == that.hash && ItemHandlerHelper.canItemStacksStack(stack, that.stack);
 	}
 
 	public boolean hashCodeNotEquals(ItemStack otherStack) {
@@ -32,36 +57,28 @@ public record ItemStackKey(ItemStack stack) {
 
 	@Override
 	public int hashCode() {
-		return getHashCode(stack);
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return "ItemStackKey[stack=" + stack + "]";
 	}
 
+	/**
+	 * Hashes just item and tag. Capabilities are left out as serializing them for every hash is expensive and equality checks them through
+	 * {@link ItemHandlerHelper#canItemStacksStack(ItemStack, ItemStack)} anyway, so stacks that differ only in capabilities just share a hash.
+	 */
 	public static int getHashCode(ItemStack stack) {
 		int hash = stack.getItem().hashCode();
 		if (stack.hasTag()) {
 			//noinspection ConstantConditions - hasTag call makes sure getTag doesn't return null
 			hash = hash * 31 + stack.getTag().hashCode();
 		}
-		CompoundTag capNbt = getCapNbt(stack);
-		if (capNbt != null && !capNbt.isEmpty()) {
-			hash = hash * 31 + capNbt.hashCode();
-		}
 		return hash;
 	}
 
-	private static final Field CAP_NBT = ObfuscationReflectionHelper.findField(ItemStack.class, "capNBT");
-
-	@Nullable
-	private static CompoundTag getCapNbt(ItemStack stack) {
-		try {
-			return (CompoundTag) CAP_NBT.get(stack);
-		}
-		catch (IllegalAccessException e) {
-			SophisticatedCore.LOGGER.error("Error getting capNBT of stack ", e);
-			return null;
-		}
-	}
-
 	public boolean matches(ItemStack stack) {
-		return hashCode() == getHashCode(stack);
+		return hashCode() == getHashCode(stack) && ItemHandlerHelper.canItemStacksStack(this.stack, stack);
 	}
 }
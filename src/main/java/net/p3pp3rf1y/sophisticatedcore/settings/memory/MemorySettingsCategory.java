@@ -19,6 +19,7 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.function.Supplier;
 
 public class MemorySettingsCategory implements ISettingsCategory<MemorySettingsCategory> {
@@ -36,11 +37,14 @@ public class MemorySettingsCategory implements ISettingsCategory<MemorySettingsC
 	private final Map<Integer, Set<Integer>> filterStackSlots = new HashMap<>();
 
 	private boolean ignoreNbt = true;
+	private int filterVersion = 0;
 	private Consumer<Item> onItemAdded = i -> {};
 
 	private Consumer<Integer> onStackAdded = i -> {};
 	private Consumer<Item> onItemRemoved = i -> {};
 	private Consumer<Integer> onStackRemoved = i -> {};
+	private IntConsumer onSlotSelectionChanged = s -> {};
+
 	public MemorySettingsCategory(Supplier<InventoryHandler> inventoryHandlerSupplier, CompoundTag categoryNbt, Consumer<CompoundTag> saveNbt) {
 		this.inventoryHandlerSupplier = inventoryHandlerSupplier;
 		this.categoryNbt = categoryNbt;
@@ -98,14 +102,18 @@ public class MemorySettingsCategory implements ISettingsCategory<MemorySettingsC
 
 	private void unselectAllFilteStackSlots() {
 		filterStackSlots.keySet().forEach(i -> onStackRemoved.accept(i));
+		Set<Integer> slots = new HashSet<>(slotFilterStacks.keySet());
 		slotFilterStacks.clear();
 		filterStackSlots.clear();
+		slots.forEach(onSlotSelectionChanged::accept);
 	}
 
 	private void unselectAllFilterItemSlots() {
 		filterItemSlots.keySet().forEach(i -> onItemRemoved.accept(i));
+		Set<Integer> slots = new HashSet<>(slotFilterItems.keySet());
 		slotFilterItems.clear();
 		filterItemSlots.clear();
+		slots.forEach(onSlotSelectionChanged::accept);
 	}
 
 	/**
@@ -143,6 +151,7 @@ public class MemorySettingsCategory implements ISettingsCategory<MemorySettingsC
 			onItemAdded.accept(k);
 			return new TreeSet<>();
 		}).add(slot);
+		onSlotSelectionChanged.accept(slot);
 	}
 
 	private void addSlotStack(int slot, ItemStack stack) {
@@ -153,6 +162,7 @@ public class MemorySettingsCategory implements ISettingsCategory<MemorySettingsC
 			onStackAdded.accept(stackHash);
 			return new TreeSet<>();
 		}).add(slot);
+		onSlotSelectionChanged.accept(slot);
 	}
 
 	public void selectSlot(int slotNumber) {
@@ -177,6 +187,7 @@ public class MemorySettingsCategory implements ISettingsCategory<MemorySettingsC
 			filterItemSlots.remove(item);
 			onItemRemoved.accept(item);
 		}
+		onSlotSelectionChanged.accept(slotNumber);
 	}
 
 	private void unselectFilterStackSlot(int slotNumber) {
@@ -192,6 +203,7 @@ public class MemorySettingsCategory implements ISettingsCategory<MemorySettingsC
 			filterStackSlots.remove(stackHash);
 			onStackRemoved.accept(stackHash);
 		}
+		onSlotSelectionChanged.accept(slotNumber);
 	}
 
 	public boolean ignoresNbt() {
@@ -230,6 +242,7 @@ public class MemorySettingsCategory implements ISettingsCategory<MemorySettingsC
 	}
 
 	private void serializeFilterItems() {
+		filterVersion++;
 		//noinspection ConstantConditions - item registry name exists in this content otherwise player wouldn't be able to work with it
 		NBTHelper.putMap(categoryNbt, SLOT_FILTER_ITEMS_TAG, slotFilterItems, String::valueOf, i -> StringTag.valueOf(ForgeRegistries.ITEMS.getKey(i).toString()));
 		NBTHelper.putMap(categoryNbt, SLOT_FILTER_STACKS_TAG, slotFilterStacks, String::valueOf, isk -> isk.stack().save(new CompoundTag()));
@@ -239,11 +252,14 @@ public class MemorySettingsCategory implements ISettingsCategory<MemorySettingsC
 	@Override
 	public void reloadFrom(CompoundTag categoryNbt) {
 		this.categoryNbt = categoryNbt;
+		filterVersion++;
+		Set<Integer> previouslySelectedSlots = getSlotIndexes();
 		slotFilterItems.clear();
 		filterItemSlots.clear();
 		slotFilterStacks.clear();
 		filterStackSlots.clear();
 		deserialize();
+		previouslySelectedSlots.forEach(onSlotSelectionChanged::accept);
 	}
 
 	@Override
@@ -302,6 +318,13 @@ public class MemorySettingsCategory implements ISettingsCategory<MemorySettingsC
 		return filterStackSlots;
 	}
 
+	/**
+	 * @return number that changes whenever the memorized items or stacks may have changed
+	 */
+	public int getFilterVersion() {
+		return filterVersion;
+	}
+
 	public boolean matchesFilter(ItemStack stack) {
 		return filterItemSlots.containsKey(stack.getItem()) || (!filterStackSlots.isEmpty() && filterStackSlots.containsKey(ItemStackKey.getHashCode(stack)));
 	}
@@ -313,6 +336,14 @@ public class MemorySettingsCategory implements ISettingsCategory<MemorySettingsC
 		this.onStackRemoved = onStackRemoved;
 	}
 
+	/**
+	 * Sets listener that gets called with the slot index whenever the slot may have been selected or unselected. Used by slot tracker
+	 * of the storage's inventory to keep its memorized empty slots separate from the other empty ones.
+	 */
+	public void setSlotSelectionChangedListener(IntConsumer onSlotSelectionChanged) {
+		this.onSlotSelectionChanged = onSlotSelectionChanged;
+	}
+
 	public void unregisterListeners() {
 		onItemAdded = i -> {};
 		onItemRemoved = i -> {};
@@ -1,11 +1,13 @@
 package net.p3pp3rf1y.sophisticatedcore.upgrades;
 
 import net.minecraft.world.item.ItemStack;
+import net.p3pp3rf1y.sophisticatedcore.inventory.ISlotTracker;
 import net.p3pp3rf1y.sophisticatedcore.inventory.InventoryHandler;
 import net.p3pp3rf1y.sophisticatedcore.inventory.ItemStackKey;
 import net.p3pp3rf1y.sophisticatedcore.settings.memory.MemorySettingsCategory;
 import net.p3pp3rf1y.sophisticatedcore.util.NBTHelper;
 
+import javax.annotation.Nullable;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -13,6 +15,12 @@ public class ContentsFilterLogic extends FilterLogic {
 
 	private final Supplier<InventoryHandler> getInventoryHandler;
 	private final MemorySettingsCategory memorySettings;
+	@Nullable
+	private Boolean filterByStorage = null;
+	@Nullable
+	private ISlotTracker matchedSlotTracker = null;
+	private int matchedStackKeysVersion = 0;
+	private int matchedMemoryFilterVersion = 0;
 
 	public ContentsFilterLogic(ItemStack upgrade, Consumer<ItemStack> saveHandler, int filterSlotCount, Supplier<InventoryHandler> getInventoryHandler, MemorySettingsCategory memorySettings) {
 		super(upgrade, saveHandler, filterSlotCount);
@@ -45,17 +53,38 @@ public class ContentsFilterLogic extends FilterLogic {
 	}
 
 	@Override
-	public boolean matchesFilter(ItemStack stack) {
+	protected boolean shouldCacheMatches() {
+		return shouldFilterByStorage() || super.shouldCacheMatches();
+	}
+
+	@Override
+	protected void refreshMatchCache() {
+		if (shouldFilterByStorage()) {
+			ISlotTracker slotTracker = getInventoryHandler.get().getSlotTracker();
+			if (slotTracker != matchedSlotTracker || slotTracker.getStackKeysVersion() != matchedStackKeysVersion
+					|| memorySettings.getFilterVersion() != matchedMemoryFilterVersion) {
+				matchedSlotTracker = slotTracker;
+				matchedStackKeysVersion = slotTracker.getStackKeysVersion();
+				matchedMemoryFilterVersion = memorySettings.getFilterVersion();
+				onFilterChanged();
+			}
+		}
+		super.refreshMatchCache();
+	}
+
+	@Override
+	protected boolean matchesFilterUncached(ItemStack stack) {
 		if (!shouldFilterByStorage()) {
-			return super.matchesFilter(stack);
+			return super.matchesFilterUncached(stack);
 		}
 
-		for (ItemStackKey filterStack : getInventoryHandler.get().getSlotTracker().getFullStacks()) {
+		ISlotTracker slotTracker = getInventoryHandler.get().getSlotTracker();
+		for (ItemStackKey filterStack : slotTracker.getFullStacks()) {
 			if (stackMatchesFilter(stack, filterStack.getStack())) {
 				return true;
 			}
 		}
-		for (ItemStackKey filterStack : getInventoryHandler.get().getSlotTracker().getPartialStacks()) {
+		for (ItemStackKey filterStack : slotTracker.getPartialStacks()) {
 			if (stackMatchesFilter(stack, filterStack.getStack())) {
 				return true;
 			}
@@ -65,10 +94,22 @@ public class ContentsFilterLogic extends FilterLogic {
 
 	private void setFilterByStorage(boolean filterByStorage) {
 		NBTHelper.setBoolean(upgrade, "filterByStorage", filterByStorage);
+		this.filterByStorage = filterByStorage;
+		onFilterChanged();
 		save();
 	}
 
 	private boolean shouldFilterByStorage() {
-		return NBTHelper.getBoolean(upgrade, "filterByStorage").orElse(false);
+		if (filterByStorage == null) {
+			filterByStorage = NBTHelper.getBoolean(upgrade, "filterByStorage").orElse(false);
+		}
+		return filterByStorage;
+	}
+
+	@Override
+	public void onContentsNbtUpdated() {
+		super.onContentsNbtUpdated();
+		filterByStorage = null;
+		onFilterChanged();
 	}
 }
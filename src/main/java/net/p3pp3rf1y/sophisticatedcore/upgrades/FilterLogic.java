@@ -1,29 +1,34 @@
 package net.p3pp3rf1y.sophisticatedcore.upgrades;
 
+import it.unimi.dsi.fastutil.objects.Object2BooleanLinkedOpenHashMap;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
-import net.minecraft.tags.TagKey;
-import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 import net.minecraftforge.fml.util.thread.SidedThreadGroups;
 import net.minecraftforge.items.ItemHandlerHelper;
+import net.p3pp3rf1y.sophisticatedcore.inventory.ItemStackKey;
 import net.p3pp3rf1y.sophisticatedcore.util.FilterItemStackHandler;
 import net.p3pp3rf1y.sophisticatedcore.util.InventoryHelper;
 import net.p3pp3rf1y.sophisticatedcore.util.NBTHelper;
 
-import java.util.Set;
+import javax.annotation.Nullable;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class FilterLogic extends FilterLogicBase {
+	private static final int MATCH_CACHE_SIZE = 64;
 	private final int filterSlotCount;
 	private final Predicate<ItemStack> isItemValid;
 	private ObservableFilterItemStackHandler filterHandler = null;
 	private boolean emptyAllowListMatchesEverything = false;
+	@Nullable
+	private FilterMatcher filterMatcher = null;
+	private final Object2BooleanLinkedOpenHashMap<ItemStackKey> matchCache = new Object2BooleanLinkedOpenHashMap<>();
+	private int filterGeneration = 0;
+	private int matchCacheGeneration = 0;
+	private int matchCacheTagsGeneration = FilterMatcher.getTagsGeneration();
 
 	public FilterLogic(ItemStack upgrade, Consumer<ItemStack> saveHandler, int filterSlotCount) {
 		this(upgrade, saveHandler, filterSlotCount, s -> true, "");
@@ -41,6 +46,7 @@ public class FilterLogic extends FilterLogicBase {
 
 	public void setEmptyAllowListMatchesEverything() {
 		emptyAllowListMatchesEverything = true;
+		onFilterChanged();
 	}
 
 	public ObservableFilterItemStackHandler getFilterHandler() {
@@ -53,48 +59,78 @@ public class FilterLogic extends FilterLogicBase {
 	}
 
 	public boolean matchesFilter(ItemStack stack) {
+		if (stack.isEmpty() || !shouldCacheMatches()) {
+			return matchesFilterUncached(stack);
+		}
+
+		refreshMatchCache();
+		ItemStackKey stackKey = ItemStackKey.probe(stack);
+		if (matchCache.containsKey(stackKey)) {
+			return matchCache.getAndMoveToLast(stackKey);
+		}
+		boolean matches = matchesFilterUncached(stack);
+		if (matchCache.size() >= MATCH_CACHE_SIZE) {
+			matchCache.removeFirstBoolean();
+		}
+		matchCache.put(stackKey.toStored(), matches);
+		return matches;
+	}
+
+	/**
+	 * Results are only remembered when matching compares more than the item as otherwise the filter matcher lookup is already cheap.
+	 */
+	protected boolean shouldCacheMatches() {
+		return shouldMatchNbt() || shouldMatchDurability();
+	}
+
+	/**
+	 * Makes sure that results remembered for stacks are dropped once anything they depend on changes. Subclasses that match against more than
+	 * filter slots and options call {@link #onFilterChanged()} here when that changes.
+	 */
+	protected void refreshMatchCache() {
+		int tagsGeneration = FilterMatcher.getTagsGeneration();
+		if (matchCacheTagsGeneration != tagsGeneration) {
+			matchCacheTagsGeneration = tagsGeneration;
+			onFilterChanged();
+		}
+		if (matchCacheGeneration != filterGeneration) {
+			matchCache.clear();
+			matchCacheGeneration = filterGeneration;
+		}
+	}
+
+	protected void onFilterChanged() {
+		filterGeneration++;
+	}
+
+	protected boolean matchesFilterUncached(ItemStack stack) {
 		if (isAllowList()) {
 			if (getPrimaryMatch() == PrimaryMatch.TAGS) {
-				return isTagMatch(stack);
+				return getFilterMatcher().matches(stack);
 			} else {
-				return (getFilterHandler().hasOnlyEmptyFilters() && emptyAllowListMatchesEverything)
-						|| InventoryHelper.iterate(getFilterHandler(), (slot, filter) -> stackMatchesFilter(stack, filter), () -> false, returnValue -> returnValue);
+				return (getFilterHandler().hasOnlyEmptyFilters() && emptyAllowListMatchesEverything) || getFilterMatcher().matches(stack);
 			}
 		} else {
 			if (getPrimaryMatch() == PrimaryMatch.TAGS) {
-				return !isTagMatch(stack);
+				return !getFilterMatcher().matches(stack);
 			} else {
-				return getFilterHandler().hasOnlyEmptyFilters()
-						|| InventoryHelper.iterate(getFilterHandler(), (slot, filter) -> !stackMatchesFilter(stack, filter), () -> true, returnValue -> !returnValue);
+				return getFilterHandler().hasOnlyEmptyFilters() || !getFilterMatcher().matches(stack);
 			}
 		}
 	}
 
-	private boolean isTagMatch(ItemStack stack) {
-		if (shouldMatchAnyTag()) {
-			return anyTagMatches(stack.getTags());
-		}
-		return allTagsMatch(stack.getTags());
-	}
-
-	private boolean allTagsMatch(Stream<TagKey<Item>> tagsStream) {
-		if (tagKeys == null) {
-			initTags();
+	private FilterMatcher getFilterMatcher() {
+		if (filterMatcher == null) {
+			filterMatcher = FilterMatcher.compile(getFilterHandler(), getPrimaryMatch(), shouldMatchDurability(), shouldMatchNbt(), getTagKeys(), shouldMatchAnyTag());
 		}
-		Set<TagKey<Item>> tags = tagsStream.collect(Collectors.toSet());
-		for (TagKey<Item> tagName : tagKeys) {
-			if (!tags.contains(tagName)) {
-				return false;
-			}
-		}
-		return true;
+		return filterMatcher;
 	}
 
-	private boolean anyTagMatches(Stream<TagKey<Item>> tags) {
-		if (tagKeys == null) {
-			initTags();
-		}
-		return tags.anyMatch(t -> tagKeys.contains(t));
+	@Override
+	protected void invalidateSettings() {
+		super.invalidateSettings();
+		filterMatcher = null;
+		onFilterChanged();
 	}
 
 	public class ObservableFilterItemStackHandler extends FilterItemStackHandler {
@@ -107,6 +143,8 @@ public class FilterLogic extends FilterLogicBase {
 		protected void onContentsChanged(int slot) {
 			super.onContentsChanged(slot);
 			NBTHelper.setCompoundNBT(upgrade, parentTagKey, "filters", serializeNBT());
+			filterMatcher = null;
+			onFilterChanged();
 			save();
 			onSlotChange.accept(slot);
 		}
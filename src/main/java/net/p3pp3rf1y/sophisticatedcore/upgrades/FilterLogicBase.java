@@ -25,6 +25,8 @@ public class FilterLogicBase {
 	private boolean allowListDefault = false;
 	@Nullable
 	protected Set<TagKey<Item>> tagKeys = null;
+	@Nullable
+	private FilterSettings settings = null;
 
 	public FilterLogicBase(ItemStack upgrade, Consumer<ItemStack> saveHandler, String parentTagKey) {
 		this.upgrade = upgrade;
@@ -34,6 +36,29 @@ public class FilterLogicBase {
 
 	public void setAllowByDefault() {
 		allowListDefault = true;
+		invalidateSettings();
+	}
+
+	public void onContentsNbtUpdated() {
+		tagKeys = null;
+		invalidateSettings();
+	}
+
+	protected void invalidateSettings() {
+		settings = null;
+	}
+
+	private FilterSettings getSettings() {
+		if (settings == null) {
+			settings = new FilterSettings(
+					NBTHelper.getBoolean(upgrade, parentTagKey, "isAllowList").orElse(allowListDefault),
+					NBTHelper.getBoolean(upgrade, parentTagKey, "matchDurability").orElse(false),
+					NBTHelper.getBoolean(upgrade, parentTagKey, "matchNbt").orElse(false),
+					NBTHelper.getEnumConstant(upgrade, parentTagKey, "primaryMatch", PrimaryMatch::fromName).orElse(PrimaryMatch.ITEM),
+					NBTHelper.getBoolean(upgrade, parentTagKey, "matchAnyTag").orElse(true)
+			);
+		}
+		return settings;
 	}
 
 	protected void save() {
@@ -75,6 +100,7 @@ public class FilterLogicBase {
 		}
 		tagKeys.add(tagName);
 		serializeTags();
+		invalidateSettings();
 		save();
 	}
 
@@ -91,6 +117,7 @@ public class FilterLogicBase {
 		}
 		tagKeys.remove(tagName);
 		serializeTags();
+		invalidateSettings();
 		save();
 	}
 
@@ -102,46 +129,53 @@ public class FilterLogicBase {
 
 	public void setAllowList(boolean isAllowList) {
 		NBTHelper.setBoolean(upgrade, parentTagKey, "isAllowList", isAllowList);
+		invalidateSettings();
 		save();
 	}
 
 	public boolean isAllowList() {
-		return NBTHelper.getBoolean(upgrade, parentTagKey, "isAllowList").orElse(allowListDefault);
+		return getSettings().allowList();
 	}
 
 	public boolean shouldMatchDurability() {
-		return NBTHelper.getBoolean(upgrade, parentTagKey, "matchDurability").orElse(false);
+		return getSettings().matchDurability();
 	}
 
 	public void setMatchDurability(boolean matchDurability) {
 		NBTHelper.setBoolean(upgrade, parentTagKey, "matchDurability", matchDurability);
+		invalidateSettings();
 		save();
 	}
 
 	public void setMatchNbt(boolean matchNbt) {
 		NBTHelper.setBoolean(upgrade, parentTagKey, "matchNbt", matchNbt);
+		invalidateSettings();
 		save();
 	}
 
 	public boolean shouldMatchNbt() {
-		return NBTHelper.getBoolean(upgrade, parentTagKey, "matchNbt").orElse(false);
+		return getSettings().matchNbt();
 	}
 
 	public void setPrimaryMatch(PrimaryMatch primaryMatch) {
 		NBTHelper.setEnumConstant(upgrade, parentTagKey, "primaryMatch", primaryMatch);
+		invalidateSettings();
 		save();
 	}
 
 	public PrimaryMatch getPrimaryMatch() {
-		return NBTHelper.getEnumConstant(upgrade, parentTagKey, "primaryMatch", PrimaryMatch::fromName).orElse(PrimaryMatch.ITEM);
+		return getSettings().primaryMatch();
 	}
 
 	public boolean shouldMatchAnyTag() {
-		return NBTHelper.getBoolean(upgrade, parentTagKey, "matchAnyTag").orElse(true);
+		return getSettings().matchAnyTag();
 	}
 
 	public void setMatchAnyTag(boolean matchAnyTag) {
 		NBTHelper.setBoolean(upgrade, parentTagKey, "matchAnyTag", matchAnyTag);
+		invalidateSettings();
 		save();
 	}
+
+	private record FilterSettings(boolean allowList, boolean matchDurability, boolean matchNbt, PrimaryMatch primaryMatch, boolean matchAnyTag) {}
 }
@@ -0,0 +1,121 @@
+package net.p3pp3rf1y.sophisticatedcore.upgrades;
+
+import it.unimi.dsi.fastutil.objects.Reference2BooleanMap;
+import it.unimi.dsi.fastutil.objects.Reference2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.items.IItemHandler;
+import net.p3pp3rf1y.sophisticatedcore.util.ItemStackHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiled form of filter slots and filter options that matches stacks with a single map lookup. Filter stacks are grouped by item in
+ * {@link PrimaryMatch#ITEM} mode and by namespace in {@link PrimaryMatch#MOD} mode and only need to be compared one by one if durability or nbt
+ * have to match as well. In {@link PrimaryMatch#TAGS} mode the result of the tag check is cached per item until tags get reloaded.
+ */
+public class FilterMatcher {
+	private static final AtomicInteger TAGS_GENERATION = new AtomicInteger();
+
+	private final PrimaryMatch primaryMatch;
+	private final boolean matchDurability;
+	private final boolean matchNbt;
+	private final Map<Item, List<ItemStack>> itemFilters;
+	private final Map<String, List<ItemStack>> modFilters;
+	private final List<TagKey<Item>> tagKeys;
+	private final boolean matchAnyTag;
+	private final Reference2BooleanMap<Item> itemTagMatches = new Reference2BooleanOpenHashMap<>();
+	private int itemTagMatchesGeneration = TAGS_GENERATION.get();
+
+	@SuppressWarnings("java:S107") //all of these are needed to describe the filter
+	private FilterMatcher(PrimaryMatch primaryMatch, boolean matchDurability, boolean matchNbt, Map<Item, List<ItemStack>> itemFilters,
+			Map<String, List<ItemStack>> modFilters, List<TagKey<Item>> tagKeys, boolean matchAnyTag) {
+		this.primaryMatch = primaryMatch;
+		this.matchDurability = matchDurability;
+		this.matchNbt = matchNbt;
+		this.itemFilters = itemFilters;
+		this.modFilters = modFilters;
+		this.tagKeys = tagKeys;
+		this.matchAnyTag = matchAnyTag;
+	}
+
+	public static void onTagsUpdated() {
+		TAGS_GENERATION.incrementAndGet();
+	}
+
+	public static int getTagsGeneration() {
+		return TAGS_GENERATION.get();
+	}
+
+	public static FilterMatcher compile(IItemHandler filterHandler, PrimaryMatch primaryMatch, boolean matchDurability, boolean matchNbt,
+			Set<TagKey<Item>> tagKeys, boolean matchAnyTag) {
+		if (primaryMatch == PrimaryMatch.TAGS) {
+			return new FilterMatcher(primaryMatch, matchDurability, matchNbt, Collections.emptyMap(), Collections.emptyMap(), List.copyOf(tagKeys), matchAnyTag);
+		}
+
+		Map<Item, List<ItemStack>> itemFilters = new Reference2ObjectOpenHashMap<>();
+		Map<String, List<ItemStack>> modFilters = new HashMap<>();
+		for (int slot = 0; slot < filterHandler.getSlots(); slot++) {
+			ItemStack filter = filterHandler.getStackInSlot(slot);
+			if (filter.isEmpty()) {
+				continue;
+			}
+			if (primaryMatch == PrimaryMatch.MOD) {
+				modFilters.computeIfAbsent(getNamespace(filter), k -> new ArrayList<>()).add(filter.copy());
+			} else {
+				itemFilters.computeIfAbsent(filter.getItem(), k -> new ArrayList<>()).add(filter.copy());
+			}
+		}
+		return new FilterMatcher(primaryMatch, matchDurability, matchNbt, itemFilters, modFilters, Collections.emptyList(), matchAnyTag);
+	}
+
+	public boolean matches(ItemStack stack) {
+		if (primaryMatch == PrimaryMatch.TAGS) {
+			return matchesTags(stack);
+		}
+		List<ItemStack> filters = primaryMatch == PrimaryMatch.MOD ? modFilters.getOrDefault(getNamespace(stack), Collections.emptyList())
+				: itemFilters.getOrDefault(stack.getItem(), Collections.emptyList());
+		if (filters.isEmpty()) {
+			return false;
+		}
+		if (!matchDurability && !matchNbt) {
+			return true;
+		}
+		for (ItemStack filter : filters) {
+			if ((!matchDurability || stack.getDamageValue() == filter.getDamageValue())
+					&& (!matchNbt || ItemStackHelper.areItemStackTagsEqualIgnoreDurability(stack, filter))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean matchesTags(ItemStack stack) {
+		int tagsGeneration = getTagsGeneration();
+		if (itemTagMatchesGeneration != tagsGeneration) {
+			itemTagMatches.clear();
+			itemTagMatchesGeneration = tagsGeneration;
+		}
+		Item item = stack.getItem();
+		if (itemTagMatches.containsKey(item)) {
+			return itemTagMatches.getBoolean(item);
+		}
+		boolean tagsMatch = matchAnyTag ? tagKeys.stream().anyMatch(stack::is) : tagKeys.stream().allMatch(stack::is);
+		itemTagMatches.put(item, tagsMatch);
+		return tagsMatch;
+	}
+
+	private static String getNamespace(ItemStack stack) {
+		ResourceLocation registryName = stack.getItem().getRegistryName();
+		return registryName != null ? registryName.getNamespace() : "";
+	}
+}
@@ -8,4 +8,12 @@ import javax.annotation.Nullable;
 
 public interface ITickableUpgrade {
 	void tick(@Nullable LivingEntity entity, Level world, BlockPos pos);
+
+	/**
+	 * @return game time at which the upgrade needs to tick next, {@link Long#MAX_VALUE} if it only needs to tick after
+	 * {@link UpgradeHandler#wakeUpTickableUpgrades()} gets called
+	 */
+	default long getNextTickTime(Level world) {
+		return world.getGameTime();
+	}
 }
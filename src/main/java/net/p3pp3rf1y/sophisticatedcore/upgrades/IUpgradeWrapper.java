@@ -20,4 +20,12 @@ public interface IUpgradeWrapper {
 	default void onBeforeRemoved() {
 		//noop
 	}
+
+	/**
+	 * Called when nbt of the upgrade stack may have changed other than through the wrapper's setters so that any settings cached from it
+	 * get read again.
+	 */
+	default void onContentsNbtUpdated() {
+		//noop
+	}
 }
@@ -1,8 +1,12 @@
 package net.p3pp3rf1y.sophisticatedcore.upgrades;
 
+import net.minecraft.core.BlockPos;
 import net.minecraft.core.NonNullList;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.entity.LivingEntity;
 import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.Level;
 import net.minecraftforge.items.ItemStackHandler;
 import net.p3pp3rf1y.sophisticatedcore.api.IStorageWrapper;
 import net.p3pp3rf1y.sophisticatedcore.renderdata.RenderInfo;
@@ -35,6 +39,10 @@ public class UpgradeHandler extends ItemStackHandler {
 	@Nullable
 	private IUpgradeWrapperAccessor wrapperAccessor = null;
 	private boolean persistent = true;
+	private boolean tickableUpgradesSleeping = false;
+	private long tickableUpgradesWakeUpTime = 0;
+	@Nullable
+	private ResourceKey<Level> tickableUpgradesSleepDimension = null;
 
 	public UpgradeHandler(int numberOfUpgradeSlots, IStorageWrapper storageWrapper, CompoundTag contentsNbt, Runnable contentsSaveHandler, Runnable onInvalidateUpgradeCaches) {
 		super(numberOfUpgradeSlots);
@@ -60,6 +68,7 @@ public class UpgradeHandler extends ItemStackHandler {
 		if (!justSavingNbtChange) {
 			refreshUpgradeWrappers();
 		}
+		wakeUpTickableUpgrades();
 	}
 
 	@Override
@@ -198,7 +207,65 @@ public class UpgradeHandler extends ItemStackHandler {
 		InventoryHelper.copyTo(this, otherHandler);
 	}
 
+	/**
+	 * Lets the upgrade wrappers know that the nbt of their upgrade stacks may have been updated so that they drop cached settings. Meant to
+	 * be called from {@link IStorageWrapper#onContentsNbtUpdated()} when the storage keeps this handler.
+	 */
+	public void onContentsNbtUpdated() {
+		if (!wrappersInitialized) {
+			return;
+		}
+		slotWrappers.values().forEach(wrapper -> {
+			wrapper.onContentsNbtUpdated();
+			if (wrapper instanceof IFilteredUpgrade filteredUpgrade) {
+				filteredUpgrade.getFilterLogic().onContentsNbtUpdated();
+			}
+		});
+	}
+
+	/**
+	 * Ticks the tickable upgrades whose cooldown ran out. Storages are expected to call this every tick instead of going through the
+	 * {@link ITickableUpgrade} wrappers themselves. On the server the handler goes to sleep once all tickable upgrades are in cooldown and
+	 * calls return right away until the {@link UpgradeTickScheduler} wakes it up for the earliest cooldown or a change to contents or upgrades
+	 * wakes it up sooner.
+	 */
+	public void tickUpgrades(@Nullable LivingEntity entity, Level level, BlockPos pos) {
+		if (tickableUpgradesSleeping && level.dimension() == tickableUpgradesSleepDimension) {
+			return;
+		}
+		tickableUpgradesSleeping = false;
+
+		long gameTime = level.getGameTime();
+		long nextTickTime = Long.MAX_VALUE;
+		for (ITickableUpgrade upgrade : getWrappersThatImplement(ITickableUpgrade.class)) {
+			if (upgrade.getNextTickTime(level) <= gameTime) {
+				upgrade.tick(entity, level, pos);
+			}
+			nextTickTime = Math.min(nextTickTime, upgrade.getNextTickTime(level));
+		}
+
+		if (!level.isClientSide() && nextTickTime > gameTime + 1) {
+			tickableUpgradesSleeping = true;
+			tickableUpgradesWakeUpTime = nextTickTime;
+			tickableUpgradesSleepDimension = level.dimension();
+			if (nextTickTime != Long.MAX_VALUE) {
+				UpgradeTickScheduler.schedule(level, nextTickTime, this);
+			}
+		}
+	}
+
+	public void wakeUpTickableUpgrades() {
+		tickableUpgradesSleeping = false;
+	}
+
+	void onScheduledWakeUp(long time) {
+		if (time >= tickableUpgradesWakeUpTime) {
+			wakeUpTickableUpgrades();
+		}
+	}
+
 	public void refreshWrappersThatImplementAndTypeWrappers() {
+		wakeUpTickableUpgrades();
 		typeWrappersInitialized = false;
 		if (wrapperAccessor != null) {
 			wrapperAccessor.clearCache();
@@ -209,6 +276,7 @@ public class UpgradeHandler extends ItemStackHandler {
 	}
 
 	public void refreshUpgradeWrappers() {
+		wakeUpTickableUpgrades();
 		wrappersInitialized = false;
 		typeWrappersInitialized = false;
 		if (wrapperAccessor != null) {
@@ -0,0 +1,96 @@
+package net.p3pp3rf1y.sophisticatedcore.upgrades;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.world.WorldEvent;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per level timing wheel that wakes up sleeping upgrade handlers once the earliest cooldown of their tickable upgrades runs out. Handlers
+ * register the wake up time when all their tickable upgrades are in cooldown and skip ticking the upgrades until they are woken up.
+ */
+public class UpgradeTickScheduler {
+	private UpgradeTickScheduler() {}
+
+	private static final int WHEEL_SIZE = 256;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	private static final Map<ResourceKey<Level>, TimingWheel> levelWheels = new HashMap<>();
+
+	public static void init() {
+		MinecraftForge.EVENT_BUS.addListener(UpgradeTickScheduler::onWorldTick);
+		MinecraftForge.EVENT_BUS.addListener(UpgradeTickScheduler::onWorldUnload);
+	}
+
+	private static void onWorldTick(TickEvent.WorldTickEvent event) {
+		if (event.phase != TickEvent.Phase.START || event.world.isClientSide()) {
+			return;
+		}
+		TimingWheel wheel = levelWheels.get(event.world.dimension());
+		if (wheel != null) {
+			//game time only gets incremented later in the level tick so block entities tick with the next value already
+			wheel.advanceTo(event.world.getGameTime() + 1);
+		}
+	}
+
+	private static void onWorldUnload(WorldEvent.Unload event) {
+		if (event.getWorld() instanceof Level level && !level.isClientSide()) {
+			levelWheels.remove(level.dimension());
+		}
+	}
+
+	static void schedule(Level level, long wakeUpTime, UpgradeHandler upgradeHandler) {
+		levelWheels.computeIfAbsent(level.dimension(), dim -> new TimingWheel(level.getGameTime())).schedule(wakeUpTime, upgradeHandler);
+	}
+
+	private static class TimingWheel {
+		private final List<List<ScheduledWakeUp>> buckets = new ArrayList<>(WHEEL_SIZE);
+		private long currentTime;
+
+		private TimingWheel(long currentTime) {
+			this.currentTime = currentTime;
+			for (int i = 0; i < WHEEL_SIZE; i++) {
+				buckets.add(new ArrayList<>());
+			}
+		}
+
+		private void schedule(long wakeUpTime, UpgradeHandler upgradeHandler) {
+			long time = Math.max(wakeUpTime, currentTime + 1);
+			buckets.get((int) (time & WHEEL_MASK)).add(new ScheduledWakeUp(time, new WeakReference<>(upgradeHandler)));
+		}
+
+		private void advanceTo(long gameTime) {
+			List<ScheduledWakeUp> dueWakeUps = new ArrayList<>();
+			//wake ups further than one rotation of the wheel away stay in their bucket until their round comes
+			long steps = Math.min(gameTime - currentTime, WHEEL_SIZE);
+			for (long time = gameTime - steps + 1; time <= gameTime; time++) {
+				List<ScheduledWakeUp> bucket = buckets.get((int) (time & WHEEL_MASK));
+				if (!bucket.isEmpty()) {
+					bucket.removeIf(wakeUp -> {
+						if (wakeUp.time() <= gameTime) {
+							dueWakeUps.add(wakeUp);
+							return true;
+						}
+						return false;
+					});
+				}
+			}
+			currentTime = Math.max(currentTime, gameTime);
+
+			for (ScheduledWakeUp wakeUp : dueWakeUps) {
+				UpgradeHandler upgradeHandler = wakeUp.upgradeHandler().get();
+				if (upgradeHandler != null) {
+					upgradeHandler.onScheduledWakeUp(wakeUp.time());
+				}
+			}
+		}
+	}
+
+	private record ScheduledWakeUp(long time, WeakReference<UpgradeHandler> upgradeHandler) {}
+}
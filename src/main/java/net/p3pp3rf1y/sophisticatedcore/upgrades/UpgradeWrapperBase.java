@@ -5,6 +5,7 @@ import net.minecraft.world.level.Level;
 import net.p3pp3rf1y.sophisticatedcore.api.IStorageWrapper;
 import net.p3pp3rf1y.sophisticatedcore.util.NBTHelper;
 
+import javax.annotation.Nullable;
 import java.util.function.Consumer;
 
 public abstract class UpgradeWrapperBase<W extends IUpgradeWrapper, T extends UpgradeItemBase<W>> implements IUpgradeWrapper {
@@ -14,6 +15,8 @@ public abstract class UpgradeWrapperBase<W extends IUpgradeWrapper, T extends Up
 	protected final T upgradeItem;
 
 	private long cooldown = 0;
+	@Nullable
+	private Boolean enabled = null;
 
 	protected UpgradeWrapperBase(IStorageWrapper storageWrapper, ItemStack upgrade, Consumer<ItemStack> upgradeSaveHandler) {
 		this.storageWrapper = storageWrapper;
@@ -44,14 +47,27 @@ public abstract class UpgradeWrapperBase<W extends IUpgradeWrapper, T extends Up
 		return getCooldownTime() > world.getGameTime();
 	}
 
+	public long getNextTickTime(Level world) {
+		return getCooldownTime();
+	}
+
+	@Override
+	public void onContentsNbtUpdated() {
+		enabled = null;
+	}
+
 	@Override
 	public boolean isEnabled() {
-		return NBTHelper.getBoolean(upgrade, "enabled").orElse(true);
+		if (enabled == null) {
+			enabled = NBTHelper.getBoolean(upgrade, "enabled").orElse(true);
+		}
+		return enabled;
 	}
 
 	@Override
 	public void setEnabled(boolean enabled) {
 		NBTHelper.setBoolean(upgrade, "enabled", enabled);
+		this.enabled = enabled;
 		save();
 		storageWrapper.getUpgradeHandler().refreshWrappersThatImplementAndTypeWrappers();
 	}
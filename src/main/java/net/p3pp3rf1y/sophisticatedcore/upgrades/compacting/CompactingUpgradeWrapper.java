@@ -29,6 +29,8 @@ public class CompactingUpgradeWrapper extends UpgradeWrapperBase<CompactingUpgra
 		implements IInsertResponseUpgrade, IFilteredUpgrade, ISlotChangeResponseUpgrade, ITickableUpgrade {
 	private final FilterLogic filterLogic;
 	private final Set<Integer> slotsToCompact = new HashSet<>();
+	@Nullable
+	private CompactingSettings settings = null;
 
 	public CompactingUpgradeWrapper(IStorageWrapper storageWrapper, ItemStack upgrade, Consumer<ItemStack> upgradeSaveHandler) {
 		super(storageWrapper, upgrade, upgradeSaveHandler);
@@ -94,11 +96,12 @@ public class CompactingUpgradeWrapper extends UpgradeWrapperBase<CompactingUpgra
 	}
 
 	public boolean shouldCompactNonUncraftable() {
-		return NBTHelper.getBoolean(upgrade, "compactNonUncraftable").orElse(false);
+		return getSettings().compactNonUncraftable();
 	}
 
 	public void setCompactNonUncraftable(boolean shouldCompactNonUncraftable) {
 		NBTHelper.setBoolean(upgrade, "compactNonUncraftable", shouldCompactNonUncraftable);
+		settings = null;
 		save();
 	}
 
@@ -106,16 +109,37 @@ public class CompactingUpgradeWrapper extends UpgradeWrapperBase<CompactingUpgra
 	public void onSlotChange(IItemHandler inventoryHandler, int slot) {
 		if (shouldWorkInGUI()) {
 			slotsToCompact.add(slot);
+			storageWrapper.getUpgradeHandler().wakeUpTickableUpgrades();
 		}
 	}
 
+	@Override
+	public long getNextTickTime(Level world) {
+		return slotsToCompact.isEmpty() ? Long.MAX_VALUE : world.getGameTime();
+	}
+
 	public void setShouldWorkdInGUI(boolean shouldWorkdInGUI) {
 		NBTHelper.setBoolean(upgrade, "shouldWorkInGUI", shouldWorkdInGUI);
+		settings = null;
 		save();
 	}
 
 	public boolean shouldWorkInGUI() {
-		return NBTHelper.getBoolean(upgrade, "shouldWorkInGUI").orElse(false);
+		return getSettings().workInGUI();
+	}
+
+	@Override
+	public void onContentsNbtUpdated() {
+		super.onContentsNbtUpdated();
+		settings = null;
+	}
+
+	private CompactingSettings getSettings() {
+		if (settings == null) {
+			settings = new CompactingSettings(NBTHelper.getBoolean(upgrade, "compactNonUncraftable").orElse(false),
+					NBTHelper.getBoolean(upgrade, "shouldWorkInGUI").orElse(false));
+		}
+		return settings;
 	}
 
 	@Override
@@ -130,4 +154,6 @@ public class CompactingUpgradeWrapper extends UpgradeWrapperBase<CompactingUpgra
 
 		slotsToCompact.clear();
 	}
+
+	private record CompactingSettings(boolean compactNonUncraftable, boolean workInGUI) {}
 }
@@ -191,6 +191,13 @@ public class AutoCookingUpgradeWrapper<W extends AutoCookingUpgradeWrapper<W, U,
 		return fuelFilterLogic;
 	}
 
+	@Override
+	public void onContentsNbtUpdated() {
+		super.onContentsNbtUpdated();
+		inputFilterLogic.onContentsNbtUpdated();
+		fuelFilterLogic.onContentsNbtUpdated();
+	}
+
 	public static class AutoSmeltingUpgradeWrapper extends AutoCookingUpgradeWrapper<AutoSmeltingUpgradeWrapper, AutoSmeltingUpgradeItem, SmeltingRecipe> {
 		public AutoSmeltingUpgradeWrapper(IStorageWrapper storageWrapper, ItemStack upgrade, Consumer<ItemStack> upgradeSaveHandler) {
 			super(storageWrapper, upgrade, upgradeSaveHandler, RecipeType.SMELTING, 1);
@@ -31,6 +31,8 @@ public class FeedingUpgradeWrapper extends UpgradeWrapperBase<FeedingUpgradeWrap
 	private static final int STILL_HUNGRY_COOLDOWN = 10;
 	private static final int FEEDING_RANGE = 3;
 	private final FilterLogic filterLogic;
+	@Nullable
+	private FeedingSettings settings = null;
 
 	public FeedingUpgradeWrapper(IStorageWrapper storageWrapper, ItemStack upgrade, Consumer<ItemStack> upgradeSaveHandler) {
 		super(storageWrapper, upgrade, upgradeSaveHandler);
@@ -117,20 +119,38 @@ public class FeedingUpgradeWrapper extends UpgradeWrapperBase<FeedingUpgradeWrap
 	}
 
 	public HungerLevel getFeedAtHungerLevel() {
-		return NBTHelper.getEnumConstant(upgrade, "feedAtHungerLevel", HungerLevel::fromName).orElse(HungerLevel.HALF);
+		return getSettings().feedAtHungerLevel();
 	}
 
 	public void setFeedAtHungerLevel(HungerLevel hungerLevel) {
 		NBTHelper.setEnumConstant(upgrade, "feedAtHungerLevel", hungerLevel);
+		settings = null;
 		save();
 	}
 
 	public boolean shouldFeedImmediatelyWhenHurt() {
-		return NBTHelper.getBoolean(upgrade, "feedImmediatelyWhenHurt").orElse(true);
+		return getSettings().feedImmediatelyWhenHurt();
 	}
 
 	public void setFeedImmediatelyWhenHurt(boolean feedImmediatelyWhenHurt) {
 		NBTHelper.setBoolean(upgrade, "feedImmediatelyWhenHurt", feedImmediatelyWhenHurt);
+		settings = null;
 		save();
 	}
+
+	@Override
+	public void onContentsNbtUpdated() {
+		super.onContentsNbtUpdated();
+		settings = null;
+	}
+
+	private FeedingSettings getSettings() {
+		if (settings == null) {
+			settings = new FeedingSettings(NBTHelper.getEnumConstant(upgrade, "feedAtHungerLevel", HungerLevel::fromName).orElse(HungerLevel.HALF),
+					NBTHelper.getBoolean(upgrade, "feedImmediatelyWhenHurt").orElse(true));
+		}
+		return settings;
+	}
+
+	private record FeedingSettings(HungerLevel feedAtHungerLevel, boolean feedImmediatelyWhenHurt) {}
 }
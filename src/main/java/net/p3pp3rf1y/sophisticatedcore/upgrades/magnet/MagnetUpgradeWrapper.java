@@ -42,6 +42,8 @@ public class MagnetUpgradeWrapper extends UpgradeWrapperBase<MagnetUpgradeWrappe
 	private static final int COOLDOWN_TICKS = 10;
 	private static final int FULL_COOLDOWN_TICKS = 40;
 	private final ContentsFilterLogic filterLogic;
+	@Nullable
+	private MagnetSettings settings = null;
 
 	private static final Set<IMagnetPreventionChecker> magnetCheckers = new HashSet<>();
 
@@ -197,19 +199,36 @@ public class MagnetUpgradeWrapper extends UpgradeWrapperBase<MagnetUpgradeWrappe
 
 	public void setPickupItems(boolean pickupItems) {
 		NBTHelper.setBoolean(upgrade, "pickupItems", pickupItems);
+		settings = null;
 		save();
 	}
 
 	public boolean shouldPickupItems() {
-		return NBTHelper.getBoolean(upgrade, "pickupItems").orElse(true);
+		return getSettings().pickupItems();
 	}
 
 	public void setPickupXp(boolean pickupXp) {
 		NBTHelper.setBoolean(upgrade, "pickupXp", pickupXp);
+		settings = null;
 		save();
 	}
 
 	public boolean shouldPickupXp() {
-		return NBTHelper.getBoolean(upgrade, "pickupXp").orElse(true);
+		return getSettings().pickupXp();
 	}
+
+	@Override
+	public void onContentsNbtUpdated() {
+		super.onContentsNbtUpdated();
+		settings = null;
+	}
+
+	private MagnetSettings getSettings() {
+		if (settings == null) {
+			settings = new MagnetSettings(NBTHelper.getBoolean(upgrade, "pickupItems").orElse(true), NBTHelper.getBoolean(upgrade, "pickupXp").orElse(true));
+		}
+		return settings;
+	}
+
+	private record MagnetSettings(boolean pickupItems, boolean pickupXp) {}
 }
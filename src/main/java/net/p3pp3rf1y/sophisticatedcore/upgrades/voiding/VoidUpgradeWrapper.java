@@ -95,9 +95,15 @@ public class VoidUpgradeWrapper extends UpgradeWrapperBase<VoidUpgradeWrapper, V
 		ItemStack slotStack = inventoryHandler.getStackInSlot(slot);
 		if (filterLogic.matchesFilter(slotStack)) {
 			slotsToVoid.add(slot);
+			storageWrapper.getUpgradeHandler().wakeUpTickableUpgrades();
 		}
 	}
 
+	@Override
+	public long getNextTickTime(Level world) {
+		return slotsToVoid.isEmpty() ? Long.MAX_VALUE : world.getGameTime();
+	}
+
 	@Override
 	public void tick(@Nullable LivingEntity entity, Level world, BlockPos pos) {
 		if (slotsToVoid.isEmpty()) {
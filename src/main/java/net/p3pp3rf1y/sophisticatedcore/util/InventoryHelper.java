@@ -2,6 +2,7 @@ package net.p3pp3rf1y.sophisticatedcore.util;
 
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.AtomicDouble;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import net.minecraft.core.BlockPos;
 import net.minecraft.sounds.SoundEvents;
 import net.minecraft.sounds.SoundSource;
@@ -16,6 +17,9 @@ import net.minecraftforge.items.IItemHandlerModifiable;
 import net.minecraftforge.items.ItemHandlerHelper;
 import net.minecraftforge.items.ItemStackHandler;
 import net.p3pp3rf1y.sophisticatedcore.inventory.IItemHandlerSimpleInserter;
+import net.p3pp3rf1y.sophisticatedcore.inventory.ISlotTracker;
+import net.p3pp3rf1y.sophisticatedcore.inventory.ITrackedContentsItemHandler;
+import net.p3pp3rf1y.sophisticatedcore.inventory.InventoryHandler;
 import net.p3pp3rf1y.sophisticatedcore.inventory.ItemStackKey;
 import net.p3pp3rf1y.sophisticatedcore.upgrades.IPickupResponseUpgrade;
 import net.p3pp3rf1y.sophisticatedcore.upgrades.UpgradeHandler;
@@ -91,6 +95,9 @@ public class InventoryHelper {
 		if (stacks.isEmpty()) {
 			return stacks;
 		}
+		if (!simulate && inventory instanceof ITrackedContentsItemHandler trackedContentsItemHandler) {
+			return trackedContentsItemHandler.insertItems(stacks, false);
+		}
 		IItemHandler targetInventory = inventory;
 		if (simulate) {
 			targetInventory = cloneInventory(inventory);
@@ -128,6 +135,10 @@ public class InventoryHelper {
 	}
 
 	public static ItemStack extractFromInventory(Item item, int count, IItemHandler inventory, boolean simulate) {
+		if (inventory instanceof InventoryHandler inventoryHandler) {
+			return extractFromInventoryHandler(item, count, inventoryHandler, simulate);
+		}
+
 		ItemStack ret = ItemStack.EMPTY;
 		int slots = inventory.getSlots();
 		for (int slot = 0; slot < slots && ret.getCount() < count; slot++) {
@@ -145,14 +156,60 @@ public class InventoryHelper {
 		return ret;
 	}
 
+	private static ItemStack extractFromInventoryHandler(Item item, int count, InventoryHandler inventoryHandler, boolean simulate) {
+		ISlotTracker slotTracker = inventoryHandler.getSlotTracker();
+		//the stack of the item that's in the lowest slot gets extracted to match the order of extraction from other handlers
+		//key sets of the tracker are iterated in place instead of copied as they only change once extraction starts
+		int[] slotsToExtractFrom = getLowestSlotsWithItem(item, slotTracker, slotTracker.getFullStacks(), null);
+		slotsToExtractFrom = getLowestSlotsWithItem(item, slotTracker, slotTracker.getPartialStacks(), slotsToExtractFrom);
+		if (slotsToExtractFrom == null) {
+			return ItemStack.EMPTY;
+		}
+
+		ItemStack ret = ItemStack.EMPTY;
+		for (int i = 0; i < slotsToExtractFrom.length && ret.getCount() < count; i++) {
+			int slot = slotsToExtractFrom[i];
+			ItemStack slotStack = inventoryHandler.getStackInSlot(slot);
+			if (slotStack.getItem() == item && (ret.isEmpty() || ItemHandlerHelper.canItemStacksStack(ret, slotStack))) {
+				int toExtract = Math.min(slotStack.getCount(), count - ret.getCount());
+				ItemStack extractedStack = inventoryHandler.extractItem(slot, toExtract, simulate);
+				if (ret.isEmpty()) {
+					ret = extractedStack;
+				} else {
+					ret.setCount(ret.getCount() + extractedStack.getCount());
+				}
+			}
+		}
+		return ret;
+	}
+
+	@Nullable
+	private static int[] getLowestSlotsWithItem(Item item, ISlotTracker slotTracker, Set<ItemStackKey> stackKeys, @Nullable int[] lowestSlots) {
+		for (ItemStackKey stackKey : stackKeys) {
+			if (stackKey.getStack().getItem() != item) {
+				continue;
+			}
+			int[] slots = slotTracker.getSlotsWithStack(stackKey);
+			if (slots.length > 0 && (lowestSlots == null || slots[0] < lowestSlots[0])) {
+				lowestSlots = slots;
+			}
+		}
+		return lowestSlots;
+	}
+
 	public static ItemStack extractFromInventory(ItemStack stack, IItemHandler inventory, boolean simulate) {
 		int extractedCount = 0;
-		int slots = inventory.getSlots();
-		for (int slot = 0; slot < slots && extractedCount < stack.getCount(); slot++) {
-			ItemStack slotStack = inventory.getStackInSlot(slot);
-			if (ItemHandlerHelper.canItemStacksStack(stack, slotStack)) {
-				int toExtract = Math.min(slotStack.getCount(), stack.getCount() - extractedCount);
-				extractedCount += inventory.extractItem(slot, toExtract, simulate).getCount();
+		if (inventory instanceof InventoryHandler inventoryHandler) {
+			for (int slot : inventoryHandler.getSlotTracker().getSlotsWithStack(ItemStackKey.probe(stack))) {
+				if (extractedCount >= stack.getCount()) {
+					break;
+				}
+				extractedCount += extractFromSlotIfStackMatches(stack, inventory, simulate, slot, extractedCount);
+			}
+		} else {
+			int slots = inventory.getSlots();
+			for (int slot = 0; slot < slots && extractedCount < stack.getCount(); slot++) {
+				extractedCount += extractFromSlotIfStackMatches(stack, inventory, simulate, slot, extractedCount);
 			}
 		}
 
@@ -166,6 +223,15 @@ public class InventoryHelper {
 		return result;
 	}
 
+	private static int extractFromSlotIfStackMatches(ItemStack stack, IItemHandler inventory, boolean simulate, int slot, int extractedCount) {
+		ItemStack slotStack = inventory.getStackInSlot(slot);
+		if (ItemHandlerHelper.canItemStacksStack(stack, slotStack)) {
+			int toExtract = Math.min(slotStack.getCount(), stack.getCount() - extractedCount);
+			return inventory.extractItem(slot, toExtract, simulate).getCount();
+		}
+		return 0;
+	}
+
 	public static ItemStack runPickupOnPickupResponseUpgrades(Level world, UpgradeHandler upgradeHandler, ItemStack remainingStack, boolean simulate) {
 		return runPickupOnPickupResponseUpgrades(world, null, upgradeHandler, remainingStack, simulate);
 	}
@@ -308,17 +374,49 @@ public class InventoryHelper {
 	}
 
 	static Map<ItemStackKey, Integer> getCompactedStacks(IItemHandler handler, Set<Integer> ignoreSlots) {
+		if (handler instanceof InventoryHandler inventoryHandler) {
+			return getCompactedStacksFromTrackedCounts(inventoryHandler, ignoreSlots);
+		}
+
 		Map<ItemStackKey, Integer> ret = new HashMap<>();
 		iterate(handler, (slot, stack) -> {
 			if (stack.isEmpty() || ignoreSlots.contains(slot)) {
 				return;
 			}
-			ItemStackKey itemStackKey = new ItemStackKey(stack);
-			ret.put(itemStackKey, ret.computeIfAbsent(itemStackKey, fs -> 0) + stack.getCount());
+			ItemStackKey itemStackKey = ItemStackKey.probe(stack);
+			Integer count = ret.get(itemStackKey);
+			if (count == null) {
+				ret.put(itemStackKey.toStored(), stack.getCount());
+			} else {
+				ret.put(itemStackKey, count + stack.getCount());
+			}
 		});
 		return ret;
 	}
 
+	private static Map<ItemStackKey, Integer> getCompactedStacksFromTrackedCounts(InventoryHandler inventoryHandler, Set<Integer> ignoreSlots) {
+		Map<ItemStackKey, Integer> ret = new HashMap<>(inventoryHandler.getSlotTracker().getStackCounts());
+		for (int slot : ignoreSlots) {
+			if (slot < 0 || slot >= inventoryHandler.getSlots()) {
+				continue;
+			}
+			ItemStack stack = inventoryHandler.getStackInSlot(slot);
+			if (stack.isEmpty()) {
+				continue;
+			}
+			ItemStackKey stackKey = ItemStackKey.probe(stack);
+			Integer count = ret.get(stackKey);
+			if (count != null) {
+				if (count > stack.getCount()) {
+					ret.put(stackKey, count - stack.getCount());
+				} else {
+					ret.remove(stackKey);
+				}
+			}
+		}
+		return ret;
+	}
+
 	public static List<ItemStack> getCompactedStacksSortedByCount(IItemHandler handler) {
 		Map<ItemStackKey, Integer> compactedStacks = getCompactedStacks(handler);
 		List<Map.Entry<ItemStackKey, Integer>> sortedList = new ArrayList<>(compactedStacks.entrySet());
@@ -339,8 +437,10 @@ public class InventoryHelper {
 			if (stack.isEmpty()) {
 				return;
 			}
-			ItemStackKey itemStackKey = new ItemStackKey(stack);
-			uniqueStacks.add(itemStackKey);
+			ItemStackKey itemStackKey = ItemStackKey.probe(stack);
+			if (!uniqueStacks.contains(itemStackKey)) {
+				uniqueStacks.add(itemStackKey.toStored());
+			}
 		});
 		return uniqueStacks;
 	}
@@ -393,6 +493,20 @@ public class InventoryHelper {
 		Collections.shuffle(stacks, rand);
 	}
 
+	/**
+	 * Adds the stack to the list split into stacks that don't go over its max stack size. Meant for leftovers of merged stacks that are handed
+	 * back to callers which may not expect oversized stacks.
+	 */
+	public static void addSplitByMaxStackSize(List<ItemStack> stacks, ItemStack stack) {
+		int count = stack.getCount();
+		int maxStackSize = stack.getMaxStackSize();
+		while (count > 0) {
+			int size = Math.min(count, maxStackSize);
+			stacks.add(ItemHandlerHelper.copyStackWithSize(stack, size));
+			count -= size;
+		}
+	}
+
 	public static void dropItems(ItemStackHandler inventoryHandler, Level level, BlockPos pos) {
 		dropItems(inventoryHandler, level, pos.getX(), pos.getY(), pos.getZ());
 	}
@@ -407,6 +521,10 @@ public class InventoryHelper {
 	}
 
 	public static int getAnalogOutputSignal(IItemHandler handler) {
+		if (handler instanceof InventoryHandler inventoryHandler) {
+			return getAnalogOutputSignalFromTrackedCounts(inventoryHandler);
+		}
+
 		AtomicDouble totalFilled = new AtomicDouble(0);
 		AtomicBoolean isEmpty = new AtomicBoolean(true);
 		iterate(handler, (slot, stack) -> {
@@ -419,4 +537,19 @@ public class InventoryHelper {
 		double percentFilled = totalFilled.get() / handler.getSlots();
 		return Mth.floor(percentFilled * 14.0F) + (isEmpty.get() ? 0 : 1);
 	}
+
+	//all slots of inventory handler have the same limit so the fill ratio can be summed per stack instead of per slot
+	private static int getAnalogOutputSignalFromTrackedCounts(InventoryHandler inventoryHandler) {
+		Object2IntMap<ItemStackKey> stackCounts = inventoryHandler.getSlotTracker().getStackCounts();
+		if (stackCounts.isEmpty() || inventoryHandler.getSlots() == 0) {
+			return 0;
+		}
+		int slotLimit = inventoryHandler.getSlotLimit(0);
+		double totalFilled = 0;
+		for (Object2IntMap.Entry<ItemStackKey> entry : stackCounts.object2IntEntrySet()) {
+			totalFilled += entry.getIntValue() / (slotLimit / ((float) 64 / entry.getKey().getStack().getMaxStackSize()));
+		}
+		double percentFilled = totalFilled / inventoryHandler.getSlots();
+		return Mth.floor(percentFilled * 14.0F) + 1;
+	}
 }
@@ -1,5 +1,6 @@
 package net.p3pp3rf1y.sophisticatedcore.util;
 
+import net.minecraft.resources.ResourceLocation;
 import net.minecraft.tags.TagKey;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
@@ -13,11 +14,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class InventorySorter {
 	private InventorySorter() {}
 
+	private static final Map<Item, ItemSortKey> ITEM_SORT_KEYS = new ConcurrentHashMap<>();
+
 	public static final Comparator<Map.Entry<ItemStackKey, Integer>> BY_NAME = Comparator.comparing(o -> getRegistryName(o.getKey()));
 
 	public static final Comparator<Map.Entry<ItemStackKey, Integer>> BY_COUNT = (first, second) -> {
@@ -25,51 +28,66 @@ public class InventorySorter {
 		return ret != 0 ? ret : getRegistryName(first.getKey()).compareTo(getRegistryName(second.getKey()));
 	};
 
-	public static final Comparator<Map.Entry<ItemStackKey, Integer>> BY_TAGS = new Comparator<>() {
-		@Override
-		public int compare(Map.Entry<ItemStackKey, Integer> first, Map.Entry<ItemStackKey, Integer> second) {
-			ItemStack firstStack = first.getKey().getStack();
-			Item firstItem = firstStack.getItem();
-			ItemStack secondStack = second.getKey().getStack();
-			Item secondItem = secondStack.getItem();
-			if (firstItem == secondItem) {
-				return 0;
-			}
-			int ret = compareTags(firstStack.getTags().collect(Collectors.toSet()), secondStack.getTags().collect(Collectors.toSet()));
-			return ret != 0 ? ret : getRegistryName(first.getKey()).compareTo(getRegistryName(second.getKey()));
+	public static final Comparator<Map.Entry<ItemStackKey, Integer>> BY_TAGS = (first, second) -> {
+		Item firstItem = first.getKey().getStack().getItem();
+		Item secondItem = second.getKey().getStack().getItem();
+		if (firstItem == secondItem) {
+			return 0;
+		}
+		ItemSortKey firstSortKey = getSortKey(firstItem);
+		ItemSortKey secondSortKey = getSortKey(secondItem);
+		int ret = compareTags(firstSortKey.sortedTags(), secondSortKey.sortedTags());
+		return ret != 0 ? ret : firstSortKey.registryName().compareTo(secondSortKey.registryName());
+	};
+
+	private static int compareTags(List<ResourceLocation> firstTags, List<ResourceLocation> secondTags) {
+		int ret = Integer.compare(secondTags.size(), firstTags.size());
+		if (ret != 0) {
+			return ret;
 		}
 
-		private int compareTags(Set<TagKey<Item>> firstTags, Set<TagKey<Item>> secondTags) {
-			int ret = Integer.compare(secondTags.size(), firstTags.size());
+		for (int i = 0; i < firstTags.size(); i++) {
+			ret = firstTags.get(i).compareTo(secondTags.get(i));
 			if (ret != 0) {
 				return ret;
 			}
+		}
+		return 0;
+	}
 
-			if (firstTags.size() == 1) {
-				return firstTags.iterator().next().location().compareTo(secondTags.iterator().next().location());
-			}
+	private static String getRegistryName(ItemStackKey itemStackKey) {
+		return getSortKey(itemStackKey.getStack().getItem()).registryName();
+	}
 
-			ArrayList<TagKey<Item>> firstTagsSorted = new ArrayList<>(firstTags);
-			ArrayList<TagKey<Item>> secondTagsSorted = new ArrayList<>(secondTags);
-			firstTagsSorted.sort(Comparator.comparing(TagKey::location));
-			secondTagsSorted.sort(Comparator.comparing(TagKey::location));
+	private static ItemSortKey getSortKey(Item item) {
+		return ITEM_SORT_KEYS.computeIfAbsent(item, ItemSortKey::of);
+	}
 
-			for (int i = 0; i < firstTagsSorted.size(); i++) {
-				ret = firstTagsSorted.get(i).location().compareTo(secondTagsSorted.get(i).location());
-				if (ret != 0) {
-					return ret;
-				}
-			}
-			return 0;
-		}
-	};
+	/**
+	 * Clears cached item names and tags used for sorting. Needs to be called whenever tags get reloaded.
+	 */
+	public static void clearSortKeyCache() {
+		ITEM_SORT_KEYS.clear();
+	}
 
-	private static String getRegistryName(ItemStackKey itemStackKey) {
-		//noinspection ConstantConditions - registryName is nonNull by the time it exists in itemstack form
-		return itemStackKey.getStack().getItem().getRegistryName().toString();
+	private record ItemSortKey(String registryName, List<ResourceLocation> sortedTags) {
+		private static ItemSortKey of(Item item) {
+			//noinspection ConstantConditions - registryName is nonNull by the time it exists in itemstack form
+			String registryName = item.getRegistryName().toString();
+			List<ResourceLocation> sortedTags = new ItemStack(item).getTags().map(TagKey::location).sorted().toList();
+			return new ItemSortKey(registryName, sortedTags);
+		}
 	}
 
 	public static void sortHandler(IItemHandlerModifiable handler, Comparator<? super Map.Entry<ItemStackKey, Integer>> comparator, Set<Integer> noSortSlots) {
+		if (handler instanceof InventoryHandler inventoryHandler) {
+			inventoryHandler.runAsTransaction(() -> sortSlots(handler, comparator, noSortSlots));
+		} else {
+			sortSlots(handler, comparator, noSortSlots);
+		}
+	}
+
+	private static void sortSlots(IItemHandlerModifiable handler, Comparator<? super Map.Entry<ItemStackKey, Integer>> comparator, Set<Integer> noSortSlots) {
 		Map<ItemStackKey, Integer> compactedStacks = InventoryHelper.getCompactedStacks(handler, noSortSlots);
 		List<Map.Entry<ItemStackKey, Integer>> sortedList = new ArrayList<>(compactedStacks.entrySet());
 		sortedList.sort(comparator);
@@ -0,0 +1,192 @@
+package net.p3pp3rf1y.sophisticatedcore.controller;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Adds and removes random storages of a large cube network the way the controller does it and checks after every change that the incrementally
+ * kept network matches what full verification finds.
+ */
+public class StorageConnectionsTest {
+	private static final int CUBE_SIZE = 16;
+	private static final int OPERATIONS = 3000;
+	private static final BlockPos CONTROLLER_POS = new BlockPos(-1, 0, 0);
+	//stands in for positions made connectable by a linked block
+	private static final BlockPos LINKED_ROOT_POS = new BlockPos(CUBE_SIZE / 2, CUBE_SIZE / 2, CUBE_SIZE / 2);
+
+	@Test
+	public void incrementalUpdatesMatchFullVerification() {
+		for (long seed = 0; seed < 5; seed++) {
+			new SyntheticNetwork(seed).run();
+		}
+	}
+
+	private static class SyntheticNetwork implements StorageConnections.IStorageLookup {
+		private final Random random;
+		private final Set<BlockPos> storagesInLevel = new HashSet<>();
+		private final Set<BlockPos> notConnectingStorages = new HashSet<>();
+		private final List<BlockPos> networkStorages = new ArrayList<>();
+		private final Set<BlockPos> networkStoragesSet = new HashSet<>();
+		private final Set<BlockPos> rootPositions = new HashSet<>();
+		private final StorageConnections storageConnections = new StorageConnections(CONTROLLER_POS);
+		private final long seed;
+
+		private SyntheticNetwork(long seed) {
+			this.seed = seed;
+			random = new Random(seed);
+			for (Direction dir : Direction.values()) {
+				rootPositions.add(CONTROLLER_POS.offset(dir.getNormal()));
+			}
+			rootPositions.add(LINKED_ROOT_POS);
+		}
+
+		@Override
+		public boolean isStorage(BlockPos pos) {
+			return storagesInLevel.contains(pos);
+		}
+
+		@Override
+		public boolean canConnectStorages(BlockPos pos) {
+			return storagesInLevel.contains(pos) && !notConnectingStorages.contains(pos);
+		}
+
+		private void run() {
+			for (int x = 0; x < CUBE_SIZE; x++) {
+				for (int y = 0; y < CUBE_SIZE; y++) {
+					for (int z = 0; z < CUBE_SIZE; z++) {
+						BlockPos pos = new BlockPos(x, y, z);
+						storagesInLevel.add(pos);
+						if (random.nextInt(20) == 0) {
+							notConnectingStorages.add(pos);
+						}
+					}
+				}
+			}
+			addStorage(new BlockPos(0, 0, 0));
+			if (!networkStoragesSet.contains(LINKED_ROOT_POS)) {
+				addStorage(LINKED_ROOT_POS);
+			}
+			assertNetworkMatchesFullVerification("initial search");
+
+			for (int operation = 0; operation < OPERATIONS; operation++) {
+				if (networkStorages.isEmpty() || random.nextInt(3) == 0) {
+					BlockPos pos = getRandomFreePositionNextToNetwork();
+					if (pos != null) {
+						storagesInLevel.add(pos);
+						addStorage(pos);
+						assertNetworkMatchesFullVerification("adding " + pos.toShortString() + " in operation " + operation);
+					}
+				} else {
+					BlockPos pos = networkStorages.get(random.nextInt(networkStorages.size()));
+					storagesInLevel.remove(pos);
+					removeStorage(pos);
+					assertNetworkMatchesFullVerification("removing " + pos.toShortString() + " in operation " + operation);
+				}
+			}
+		}
+
+		//same search as the controller runs when a storage gets placed
+		private void addStorage(BlockPos storagePos) {
+			Map<BlockPos, BlockPos> positionsToCheck = new LinkedHashMap<>();
+			positionsToCheck.put(storagePos, storageConnections.findConnectedNeighbor(storagePos, rootPositions, this));
+			Set<BlockPos> positionsChecked = new HashSet<>();
+			while (!positionsToCheck.isEmpty()) {
+				Iterator<Map.Entry<BlockPos, BlockPos>> it = positionsToCheck.entrySet().iterator();
+				Map.Entry<BlockPos, BlockPos> entry = it.next();
+				BlockPos posToCheck = entry.getKey();
+				BlockPos connectedThrough = entry.getValue();
+				it.remove();
+				positionsChecked.add(posToCheck);
+				if (!isStorage(posToCheck)) {
+					continue;
+				}
+				assertNotNull(connectedThrough, "storage at " + posToCheck.toShortString() + " added without connection");
+				networkStorages.add(posToCheck);
+				networkStoragesSet.add(posToCheck);
+				storageConnections.connect(posToCheck, connectedThrough);
+				if (canConnectStorages(posToCheck)) {
+					for (Direction dir : Direction.values()) {
+						BlockPos pos = posToCheck.offset(dir.getNormal());
+						if (!positionsChecked.contains(pos) && !networkStoragesSet.contains(pos)) {
+							positionsToCheck.putIfAbsent(pos, posToCheck);
+						}
+					}
+				}
+			}
+		}
+
+		//same steps as controller's removeStorage once connections are known
+		private void removeStorage(BlockPos storagePos) {
+			Set<BlockPos> disconnectedStorages = storageConnections.detachConnectedThrough(storagePos);
+			removeFromNetwork(storagePos);
+			if (!disconnectedStorages.isEmpty()) {
+				storageConnections.reconnect(disconnectedStorages, rootPositions, this);
+				disconnectedStorages.forEach(this::removeFromNetwork);
+			}
+		}
+
+		private void removeFromNetwork(BlockPos storagePos) {
+			storageConnections.disconnect(storagePos);
+			networkStorages.remove(storagePos);
+			networkStoragesSet.remove(storagePos);
+		}
+
+		private BlockPos getRandomFreePositionNextToNetwork() {
+			List<BlockPos> candidates = new ArrayList<>();
+			for (BlockPos rootPos : rootPositions) {
+				if (isInCube(rootPos) && !storagesInLevel.contains(rootPos)) {
+					candidates.add(rootPos);
+				}
+			}
+			for (int attempt = 0; attempt < 20 && !networkStorages.isEmpty(); attempt++) {
+				BlockPos networkPos = networkStorages.get(random.nextInt(networkStorages.size()));
+				BlockPos pos = networkPos.offset(Direction.values()[random.nextInt(Direction.values().length)].getNormal());
+				if (canConnectStorages(networkPos) && isInCube(pos) && !storagesInLevel.contains(pos)) {
+					candidates.add(pos);
+				}
+			}
+			return candidates.isEmpty() ? null : candidates.get(random.nextInt(candidates.size()));
+		}
+
+		private static boolean isInCube(BlockPos pos) {
+			return pos.getX() >= 0 && pos.getX() < CUBE_SIZE && pos.getY() >= 0 && pos.getY() < CUBE_SIZE && pos.getZ() >= 0 && pos.getZ() < CUBE_SIZE;
+		}
+
+		private static String getFirstPositionsNotIn(Set<BlockPos> positions, Set<BlockPos> notIn) {
+			return positions.stream().filter(pos -> !notIn.contains(pos)).limit(5).map(BlockPos::toShortString).toList().toString();
+		}
+
+		private void assertNetworkMatchesFullVerification(String afterWhat) {
+			String context = "seed " + seed + " after " + afterWhat;
+			Set<BlockPos> expected = storageConnections.findConnected(storagesInLevel, rootPositions, this).keySet();
+			assertEquals(getFirstPositionsNotIn(expected, networkStoragesSet), "[]", context + ": storages missing from network");
+			assertEquals(getFirstPositionsNotIn(networkStoragesSet, expected), "[]", context + ": storages that should have been removed from network");
+			assertEquals(networkStorages.size(), networkStoragesSet.size(), context);
+
+			for (BlockPos storagePos : networkStoragesSet) {
+				BlockPos connectedThrough = storageConnections.getConnectedThrough(storagePos);
+				assertNotNull(connectedThrough, context + ": " + storagePos.toShortString() + " has no connection");
+				if (connectedThrough.equals(CONTROLLER_POS)) {
+					assertTrue(rootPositions.contains(storagePos), context + ": " + storagePos.toShortString() + " connected to controller without being a root");
+				} else {
+					assertTrue(networkStoragesSet.contains(connectedThrough) && canConnectStorages(connectedThrough)
+							&& storagePos.distManhattan(connectedThrough) == 1, context + ": " + storagePos.toShortString() + " connected through " + connectedThrough.toShortString());
+				}
+			}
+		}
+	}
+}